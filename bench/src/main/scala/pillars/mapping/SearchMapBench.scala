@@ -0,0 +1,131 @@
+package pillars.mapping
+
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+import pillars.core.MRRG
+
+/** Micro-benchmarks of the hot paths of searchMap.
+ *
+ * The fixture loads a shipped DFG and MRRG, builds the context and the search state by initSearch,
+ * and places the first opNode in topological order and one of its consumers on two function nodes.
+ * Each routine is then measured from this state, which is not changed by the benchmarks.
+ *
+ * @example Run "sbt 'bench/jmh:run -prof gc pillars.mapping.SearchMapBench'" from the root of the repository,
+ *          the gc profiler gives the allocation rate of each routine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+class SearchMapBench {
+  @Param(Array("accum", "cap", "sum", "vadd"))
+  var dfgName: String = _
+
+  @Param(Array("mrrg/cgra-mrrg-4m4-ii1-full-simple.txt"))
+  var mrrgFilename: String = _
+
+  var mapper: searchMap = _
+  var source = 0
+  var sink = 0
+  var producer = 0
+  var consumer = 0
+  var ranks: Array[Int] = _
+  var path1: Array[Int] = _
+  var path2: Array[Int] = _
+  var ids: Array[Integer] = _
+  val noop: searchMap.Caller = new searchMap.Caller {
+    override def go(): searchFrame = new searchFrame {
+      override def step(): searchFrame = null
+    }
+  }
+
+  /** Get a shipped file from the root of the repository, which may be the parent of the working directory.
+   */
+  def resolve(filename: String): String = {
+    Seq(new File(filename), new File("..", filename)).find(_.exists()).getOrElse(
+      throw new IllegalArgumentException("Can not find " + filename)).getPath
+  }
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val dfg = DotReader.loadDot(resolve("dfg/" + dfgName + "/" + dfgName + ".dot"))
+    val mrrg = new MRRG()
+    mrrg.loadTXT(resolve(mrrgFilename))
+    val filename = File.createTempFile("searchMapBench", "").getPath
+    mapper = SearchMap.prepare(dfg, mrrg, filename, scheduleControl = false, skewLimit = 2)
+    mapper.initSearch()
+
+    val funcNodes = (0 until mapper.mrrgFuncNodes.size()).map(j => mapper.mrrgFuncNodes.get(j).intValue())
+    producer = mapper.topoque(0)
+    val consumers = (0 until mapper.DFGout(producer).size()).map(j => mapper.DFGout(producer).get(j).intValue())
+    consumer = consumers.find(_ != producer).getOrElse(producer)
+    val context = mapper.context
+    source = funcNodes.find(node => context.matches(producer, node)).get
+    //The nearest compatible function node, which is not adjacent to source.
+    val candidates = funcNodes.filter(node => context.matches(consumer, node))
+      .filter(node => node != source && context.distance(source, node) < mapper.inf)
+    sink = candidates.sortBy(node => (context.distance(source, node) < 2, context.distance(source, node)))
+      .headOption.getOrElse(source)
+
+    mapper.`match`(producer) = source
+    mapper.reMatch(source) = producer
+    mapper.used(source) = true
+    if (sink != source) {
+      mapper.`match`(consumer) = sink
+      mapper.reMatch(sink) = consumer
+      mapper.used(sink) = true
+    }
+
+    ranks = mapper.GetRank(source, sink, producer)
+    path1 = mapper.GetPathTo(mapper.GetToArray(sink, mapper.singlePathTimeLimit, ranks), source, sink,
+      Math.min(mapper.singlePathTimeLimit, mapper.context.distance(source, sink)))
+    path2 = path1.reverse
+    ids = (0 until funcNodes.size).map(j => Integer.valueOf(j)).toArray
+  }
+
+  @Benchmark
+  def getRank(): Array[Int] = {
+    mapper.GetRank(source, sink, producer)
+  }
+
+  @Benchmark
+  def getToArray(): Array[Array[Int]] = {
+    mapper.GetToArray(sink, mapper.singlePathTimeLimit, ranks)
+  }
+
+  @Benchmark
+  def trivialDPto(): Array[Array[Array[Int]]] = {
+    mapper.trivialDPto(sink, mapper.singlePathTimeLimit, producer)
+  }
+
+  @Benchmark
+  def greedySearch(): Unit = {
+    val path = new java.util.ArrayList[Integer]()
+    path.add(source)
+    new searchStack(mapper.GreedySearch(source, source, sink, mapper.singlePathTimeLimit,
+      mapper.singlePathEdgeLimit, path, noop)).run(Long.MaxValue)
+  }
+
+  @Benchmark
+  def pathMerge(): Array[Int] = {
+    mapper.PathMerge(path1, path2)
+  }
+
+  @Benchmark
+  def usePathAndBacktrack(): Unit = {
+    val mark = mapper.trail.mark()
+    mapper.usePath(producer, consumer, path1)
+    mapper.backtrack(mark)
+  }
+
+  @Benchmark
+  def placementOrder(): Array[Integer] = {
+    val id = ids.clone()
+    java.util.Arrays.sort(id, mapper.placementOrder(Math.min(1, mapper.topoque.length - 1)))
+    id
+  }
+}
@@ -109,4 +109,18 @@ object OpcodeTranslator {
     ret
   }
 
+  /** A map between opcodes and their names in OpEnum, since opcodes are named by numbers.
+   */
+  lazy val opcodeNames: Map[OpEnum, String] = OpEnum.getClass.getMethods
+    .filter(m => m.getParameterCount == 0 && m.getReturnType == classOf[OpEnum.Value])
+    .map(m => m.invoke(OpEnum).asInstanceOf[OpEnum] -> m.getName.toLowerCase).toMap
+
+  /** Get the name of an opcode.
+   *
+   * @param opEnum a opcode
+   */
+  def getName(opEnum: OpEnum): String = {
+    opcodeNames.getOrElse(opEnum, opEnum.toString)
+  }
+
 }
@@ -12,14 +12,31 @@ object GlobalMappingResult {
   val elapsedTimes = new ArrayBuffer[Double]()
   val usedBypassALUs = new ArrayBuffer[Int]()
   val usedFuncALUs = new ArrayBuffer[Int]()
+  val solverProgress = new ArrayBuffer[String]()
+  val earlyStops = new ArrayBuffer[String]()
+  val metrics = new ArrayBuffer[String]()
 
-  def addResult(result: String, currentElapsedTime: Double, usedBypassALU: Int, usedFuncALU: Int): Unit = {
+  def addResult(result: String, currentElapsedTime: Double, usedBypassALU: Int, usedFuncALU: Int): Unit = synchronized {
     mappingResult.append(result)
     elapsedTimes.append(currentElapsedTime)
     usedBypassALUs.append(usedBypassALU)
     usedFuncALUs.append(usedFuncALU)
   }
 
+  /** Add the latest solver progress record (a JSON line) of a mapping and the reason of its early stop,
+   * which is empty when the solve is not stopped by a stopping policy.
+   */
+  def addProgress(progress: String, earlyStop: String): Unit = synchronized {
+    solverProgress.append(progress)
+    earlyStops.append(earlyStop)
+  }
+
+  /** Add the phase timing and counters (a JSON object) of a mapping.
+   */
+  def addMetrics(metrics: String): Unit = synchronized {
+    this.metrics.append(metrics)
+  }
+
   def reset(): Unit = {
     archName = ""
     II = 0
@@ -28,6 +45,9 @@ object GlobalMappingResult {
     elapsedTimes.clear()
     usedBypassALUs.clear()
     usedFuncALUs.clear()
+    solverProgress.clear()
+    earlyStops.clear()
+    metrics.clear()
   }
 
   def getSuccessCount(): Double = {
@@ -0,0 +1,157 @@
+package pillars.mapping
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, ConcurrentHashMap, ExecutorCompletionService, Executors, ThreadFactory, TimeUnit}
+
+import pillars.core.{BlockTrait, MRRG}
+
+import scala.collection.JavaConverters
+
+/** This object explores IIs in parallel to find the mapping with the smallest II.
+ */
+object IISweep {
+
+  /** The result of an II sweep.
+   *
+   * @param II       the smallest II with a validated mapping
+   * @param engine   the engine producing the mapping
+   * @param dfg      the DFG mapped with II
+   * @param mrrg     the MRRG unrolled with II, which holds the mapping
+   * @param filename the name used to write result
+   */
+  case class SweepResult(II: Int, engine: MappingEngine, dfg: DFG, mrrg: MRRG, filename: String)
+
+  /** Map the DFG in a Dot file to the architecture with IIs from the MII to maxII.
+   *
+   * The MRRG of each II is unrolled by graphUnroll and mapped in parallel threads.
+   * As soon as an II succeeds, the mappings with higher IIs are cancelled,
+   * and the result is given when all lower IIs have failed.
+   *
+   * @example If filename is "dir/ii", the result of II = 2 is written into "dir/ii2_r.txt" and "dir/ii2_i.txt".
+   * @param arch        the architecture
+   * @param dfgFilename the name of the Dot file of the DFG
+   * @param filename    the prefix of the names we will used to write results, followed by II
+   * @param options     the options of mapping
+   * @param minII       the smallest II to be tried, or 0 to use the MII
+   * @param maxII       the largest II to be tried
+   * @param parallelism the number of IIs mapped at the same time
+   * @param newEngine   the function producing the engine of each II
+   * @param timeout     the time limit of the sweep in milliseconds
+   * @return the result with the smallest II, or None when no II succeeds
+   */
+  def sweep(arch: BlockTrait, dfgFilename: String, filename: String, options: MappingOptions = MappingOptions(),
+            minII: Int = 0, maxII: Int = 8, parallelism: Int = 4,
+            newEngine: () => MappingEngine = () => new ILPEngine,
+            timeout: Long = 3600000): Option[SweepResult] = {
+    arch.initialization()
+    sweep(II => DotReader.loadDot(dfgFilename, II), II => arch.graphUnroll(arch.mrrg, II), filename,
+      options, minII, maxII, parallelism, newEngine, timeout)
+  }
+
+  /** Map DFGs to MRRGs with IIs from the MII to maxII.
+   *
+   * @param loadDFG     the function producing the DFG with II
+   * @param getMRRG     the function producing the MRRG unrolled with II, which is called in mapping threads
+   * @param filename    the prefix of the names we will used to write results, followed by II
+   * @param options     the options of mapping
+   * @param minII       the smallest II to be tried, or 0 to use the MII
+   * @param maxII       the largest II to be tried
+   * @param parallelism the number of IIs mapped at the same time
+   * @param newEngine   the function producing the engine of each II
+   * @param timeout     the time limit of the sweep in milliseconds
+   * @return the result with the smallest II, or None when no II succeeds
+   */
+  def sweep(loadDFG: Int => DFG, getMRRG: Int => MRRG, filename: String, options: MappingOptions,
+            minII: Int, maxII: Int, parallelism: Int, newEngine: () => MappingEngine,
+            timeout: Long): Option[SweepResult] = {
+    val startII = if (minII > 0) minII else MII(loadDFG(1), getMRRG(1))
+    if (startII > maxII) {
+      println("The MII " + (if (startII == Int.MaxValue) "(infeasible)" else startII) + " is larger than " + maxII)
+      return None
+    }
+    println("II sweep: " + startII + " to " + maxII)
+
+    val engines = new ConcurrentHashMap[Int, MappingEngine]()
+    val bestII = new AtomicInteger(Int.MaxValue)
+
+    /** Cancel the engines with II larger than the succeeded II.
+     */
+    def cancelAbove(II: Int): Unit = {
+      bestII.accumulateAndGet(II, (a: Int, b: Int) => Math.min(a, b))
+      for ((engineII, engine) <- JavaConverters.mapAsScalaMap(engines) if engineII > bestII.get) {
+        engine.cancel()
+      }
+    }
+
+    val executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactory {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r)
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    val completion = new ExecutorCompletionService[(Int, Option[SweepResult])](executor)
+    for (II <- startII to maxII) {
+      completion.submit(new Callable[(Int, Option[SweepResult])] {
+        override def call(): (Int, Option[SweepResult]) = {
+          if (II > bestII.get) {
+            return (II, None)
+          }
+          val engine = newEngine()
+          engines.put(II, engine)
+          if (II > bestII.get) {
+            engine.cancel()
+          }
+          try {
+            val mrrg = getMRRG(II)
+            val dfg = loadDFG(II)
+            val iiFilename = filename + II
+            if (II <= bestII.get && engine.mapping(dfg, mrrg, iiFilename, options)) {
+              cancelAbove(II)
+              (II, Some(SweepResult(II, engine, dfg, mrrg, iiFilename)))
+            } else {
+              (II, None)
+            }
+          } catch {
+            case e: Exception =>
+              println("II " + II + " fails: " + e.getMessage)
+              (II, None)
+          }
+        }
+      })
+    }
+
+    val deadline = System.currentTimeMillis() + timeout
+    var results = Map[Int, Option[SweepResult]]()
+
+    /** Check whether the smallest II is determined.
+     */
+    def determined(): Boolean = {
+      val best = results.filter(_._2.isDefined).keys
+      val bound = if (best.isEmpty) maxII + 1 else best.min
+      (startII until bound).forall(results.contains)
+    }
+
+    while (!determined() && System.currentTimeMillis() < deadline) {
+      val future = completion.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+      if (future != null) {
+        val result = future.get()
+        results += result
+        println("II " + result._1 + (if (result._2.isDefined) " succeeds" else " fails"))
+      }
+    }
+    for ((engineII, engine) <- JavaConverters.mapAsScalaMap(engines) if !results.get(engineII).exists(_.isDefined)) {
+      engine.cancel()
+    }
+    executor.shutdownNow()
+
+    val succeeded = results.values.flatten
+    if (succeeded.isEmpty) {
+      None
+    } else {
+      val best = succeeded.minBy(_.II)
+      println("II sweep result: II = " + best.II)
+      Some(best)
+    }
+  }
+}
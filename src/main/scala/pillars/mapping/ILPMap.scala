@@ -25,28 +25,134 @@ object ILPMap {
    * @param scheduleControl a parameter indicating whether the latency and skew should be controlled and obtained in ILP
    * @param skewLimit       the limit of skew which only is used when latencyControl is ture
    * @param latencyLimit    the limit of latency which only is used when latencyControl is ture
+   * @param compactPlacement a parameter indicating whether the compact linearized placement objective is used,
+   *                         which only is used when separatedPR is true
+   * @param dumpLP          a parameter indicating whether the ILP models should be named and written into LP files
+   * @param lazyRingCut     a parameter indicating whether useless rings are forbidden by lazy cuts during the solve,
+   *                        which only is used when scheduleControl is true
+   * @param bendersCut      a parameter indicating whether an infeasible routing feeds a feasibility cut back into
+   *                        the placement model instead of rebuilding it, which only is used when separatedPR is true
+   * @param portfolioSize   the number of copies of the routing model solved concurrently with different seeds,
+   *                        the threads of the machine are split between them
+   * @param onMapperCreated a function called with the mapper when it is created, which can be used to cancel it
+   * @param useCache        a parameter indicating whether the result is loaded from and stored into MappingCache
+   * @param startMrrg       an MRRG holding a prior mapping of the same DFG, which is used as the MIP start
+   * @param searchStart     a parameter indicating whether SearchMap is run first and its result is used as the MIP start,
+   *                        which only is used when startMrrg is null
+   * @param searchStartTime the time limit of SearchMap in milliseconds when searchStart is true
+   * @param useVarHints     a parameter indicating whether the start is given as variable hints instead of the MIP start
+   * @param checkMII        a parameter indicating whether the mapping is skipped when II is below the MII
+   * @param checkPlacement  a parameter indicating whether the mapping is skipped when opNodes can not be placed
+   *                        on distinct function nodes
+   * @param symmetryBreaking a parameter indicating whether placements symmetric under interchangeable PEs are excluded,
+   *                         which is skipped when a start is given by startMrrg or searchStart
+   * @param latencyObjective the latency objective minimized before routing resources, which is "max" (the maximal
+   *                         latency of opNodes), "sum" (the sum of latencies of sink opNodes) or "none",
+   *                         and only is used when scheduleControl is true
+   * @param hierarchicalObjective a parameter indicating whether the latency, routing and bypass ALU objectives
+   *                              are optimized in order instead of being weighted
+   * @param latencyWeight   the weight of the latency objective when hierarchicalObjective is false
+   * @param bypassWeight    the weight of the bypass ALUs when hierarchicalObjective is false
+   * @param harvestPool     a parameter indicating whether the solutions in the pool are ring checked and ranked
+   *                        by latency, registers and bypass ALUs, and the best one is emitted
+   * @param poolSize        the size of the solution pool which only is used when harvestPool is true
+   * @param progressLog     a parameter indicating whether the solver progress is written into "filename_progress.jsonl"
+   * @param stallTime       the routing solve stops when its incumbent is not improved for stallTime seconds,
+   *                        0 means no limit
+   * @param stallNodes      the routing solve stops when its gap is not changed for stallNodes nodes, 0 means no limit
+   * @param writeMetrics    a parameter indicating whether the phase timing and model sizes are written into
+   *                        "filename_metrics.json" and "filename_metrics.csv"
    * @return the run time of mapper
    */
   def mapping(dfg: DFG, mrrg: MRRG, filename: String = null, fw: FileWriter = null,
               separatedPR: Boolean = false, scheduleControl: Boolean = false,
-              skewLimit: Int = 2, latencyLimit: Int = 32): Double = {
+              skewLimit: Int = 2, latencyLimit: Int = 32,
+              compactPlacement: Boolean = false, dumpLP: Boolean = true,
+              lazyRingCut: Boolean = true, bendersCut: Boolean = true,
+              portfolioSize: Int = 1, onMapperCreated: gurobiMapJava => Unit = null,
+              useCache: Boolean = false, startMrrg: MRRG = null, searchStart: Boolean = false,
+              searchStartTime: Long = 10000, useVarHints: Boolean = false,
+              checkMII: Boolean = true, checkPlacement: Boolean = true,
+              symmetryBreaking: Boolean = true, latencyObjective: String = "none",
+              hierarchicalObjective: Boolean = true, latencyWeight: Double = 10.0, bypassWeight: Double = 1.0,
+              harvestPool: Boolean = false,
+              poolSize: Int = 10, progressLog: Boolean = false,
+              stallTime: Double = 0, stallNodes: Double = 0, writeMetrics: Boolean = false): Double = {
+    if (checkMII && !MII.check(dfg, mrrg)) {
+      GlobalMappingResult.addResult("II below MII", 0, 0, 0)
+      return -1
+    }
+    if (checkPlacement) {
+      val placementCheck = PlacementCheck.check(dfg, mrrg)
+      if (!placementCheck.feasible) {
+        println(placementCheck)
+        GlobalMappingResult.addResult("infeasible placement", 0, 0, 0)
+        return -1
+      }
+    }
+    val start = if (startMrrg != null) startFromMRRG(startMrrg) else null
     mrrg.nodes.foreach(n => n.mapNode = null)
+    //Options changing which mapping is returned are in the key.
+    //The start is given by the hash of its mapping, which only depends on the names in it.
+    lazy val cacheKey = MappingCache.key("ilp", dfg, mrrg, separatedPR, scheduleControl, skewLimit, latencyLimit,
+      compactPlacement, lazyRingCut, bendersCut, portfolioSize, if (start == null) "none" else start.hashCode,
+      searchStart, searchStartTime, useVarHints, symmetryBreaking, latencyObjective, hierarchicalObjective,
+      latencyWeight, bypassWeight, harvestPool, poolSize, stallTime, stallNodes)
+    if (useCache && fw == null) {
+      val cached = MappingCache.load(cacheKey, dfg, mrrg, filename)
+      if (cached.isDefined) {
+        GlobalMappingResult.addResult(cached.get, 0, 0, 0)
+        return 0
+      }
+    }
     val mapper = new gurobiMapJava(filename)
+    if (onMapperCreated != null) {
+      onMapperCreated(mapper)
+    }
 
     mapper.II = dfg.II
     mapper.useRelativeSkew = USE_RELATIVE_SKEW
+    mapper.compactPlacementObjective = compactPlacement
+    mapper.dumpLP = dumpLP
+    mapper.lazyRingCut = lazyRingCut
+    mapper.bendersCut = bendersCut
+    mapper.portfolioSize = portfolioSize
+    mapper.useVarHints = useVarHints
+    mapper.symmetryBreaking = symmetryBreaking
+    mapper.latencyObjective = latencyObjective
+    mapper.hierarchicalObjective = hierarchicalObjective
+    mapper.latencyWeight = latencyWeight
+    mapper.bypassWeight = bypassWeight
+    mapper.harvestPool = harvestPool
+    mapper.poolSize = poolSize
+    mapper.progressLog = progressLog
+    mapper.collectMetrics = writeMetrics
+    if (stallTime > 0) {
+      mapper.stoppingPolicies.add(() => new noImprovementPolicy(stallTime))
+    }
+    if (stallNodes > 0) {
+      mapper.stoppingPolicies.add(() => new gapStallPolicy(stallNodes))
+    }
+    if (start != null) {
+      setStart(mapper, start)
+    } else if (searchStart && fw == null) {
+      startFromSearch(dfg, mrrg, filename, skewLimit, searchStartTime).foreach(s => setStart(mapper, s))
+    }
 
     //        val seed = System.currentTimeMillis()
     //    println(seed)
     //        mapper.RNG.setSeed(seed)
     //    mapper.RNG.setSeed(GlobalMappingResult.usedFuncALUs.size)
 
+    var phase = mappingMetrics.start()
     val neighboringDistance = 20
     mapper.neighboringDistance = neighboringDistance
     mrrg.shortestPath(neighboringDistance).foreach(t =>
       mapper.MRRGDistance.put(JavaConverters.seqAsJavaList(List(t._1._1, t._1._2)), t._2))
     mrrg.neighboringNodeMap.map(pair => mapper.MRRGNeighboringNode
       .put(pair._1, JavaConverters.setAsJavaSet(pair._2)))
+    mapper.metrics.stop("shortest_path", phase)
+    phase = mappingMetrics.start()
 
     val num_dfg_op = dfg.getOpSize()
     val num_dfg_val = dfg.getValSize()
@@ -226,10 +332,13 @@ object ILPMap {
       mapper.MRRGRoutingFanoutType.add(fanOutType)
     }
 
+    mapper.metrics.stop("marshal", phase)
+
     if (fw != null) {
       val result = mapper.ILPMap(fw)
       println("Elapsed time:" + mapper.elapsedTime + "ms")
       GlobalMappingResult.addResult(mapper.result, mapper.elapsedTime, mapper.usedBypassALU, mapper.usedFuncALU)
+      recordMetrics(mapper, writeMetrics)
       return result
     } else {
       if (scheduleControl) {
@@ -239,6 +348,9 @@ object ILPMap {
       val result = mapper.ILPMap(separatedPR, scheduleControl)
       println("Elapsed time:" + mapper.elapsedTime + "ms")
       GlobalMappingResult.addResult(mapper.result, mapper.elapsedTime, mapper.usedBypassALU, mapper.usedFuncALU)
+      GlobalMappingResult.addProgress(mapper.lastProgress, mapper.stopReason)
+
+      phase = mappingMetrics.start()
 
             if (mapper.result.contains("success")) {
       val routingResult = result(0)
@@ -297,10 +409,136 @@ object ILPMap {
       dfg.regConnect = JavaConverters.mapAsScalaMap(mapper.regConnect)
       dfg.synthesizable = true
       dfg.regNum = mapper.regMap.size()
+      if (useCache) {
+        MappingCache.store(cacheKey, dfg, mrrg, filename, mapper.result)
+      }
             }
+      mapper.metrics.stop("postprocess", phase)
+      recordMetrics(mapper, writeMetrics)
       return mapper.elapsedTime
     }
     -1
   }
 
+  /** Give the metrics of a mapper to GlobalMappingResult, and write them when writeMetrics is true.
+   *
+   * @param mapper       the mapper after mapping
+   * @param writeMetrics a parameter indicating whether the metrics are written into "filename_metrics.json"
+   *                     and "filename_metrics.csv"
+   */
+  def recordMetrics(mapper: gurobiMapJava, writeMetrics: Boolean): Unit = {
+    GlobalMappingResult.addMetrics(mapper.metrics.toJson("ilp"))
+    if (writeMetrics && mapper.filename != null) {
+      mapper.metrics.write(mapper.filename, "ilp")
+    }
+  }
+
+  /** A mapping used as the MIP start, given by names of nodes.
+   *
+   * @param placement the function node of each opNode
+   * @param routing   the routing nodes used by each fan-out of a valNode,
+   *                  or one set of all used routing nodes when fan-outs are unknown
+   * @param latency   the latency of each opNode
+   */
+  case class MappingStart(placement: Map[String, String], routing: Map[String, Seq[Set[String]]],
+                          latency: Map[String, Int])
+
+  /** Get the start from an MRRG holding a mapping.
+   *
+   * @param mrrg the MRRG holding a mapping
+   */
+  def startFromMRRG(mrrg: MRRG): MappingStart = {
+    var placement = Map[String, String]()
+    var routing = Map[String, Set[String]]()
+    for (node <- mrrg.nodes if node.mapNode != null) {
+      node.mapNode match {
+        case op: OpNode if node.ops.nonEmpty => placement += op.name -> node.name
+        case value: ValNode =>
+          routing += value.name -> (routing.getOrElse(value.name, Set[String]()) + node.name)
+        case _ =>
+      }
+    }
+    MappingStart(placement, routing.map(pair => pair._1 -> Seq(pair._2)), Map())
+  }
+
+  /** Get the start by running SearchMap on a copy of the MRRG with a time limit.
+   *
+   * @param dfg       the given DFG
+   * @param mrrg      the given MRRG
+   * @param filename  the name we will used to write result
+   * @param skewLimit the limit of skew
+   * @param timeLimit the time limit of SearchMap in milliseconds
+   * @return the start, or None when SearchMap does not find a mapping in time
+   */
+  def startFromSearch(dfg: DFG, mrrg: MRRG, filename: String, skewLimit: Int, timeLimit: Long): Option[MappingStart] = {
+    if (!USE_RELATIVE_SKEW) {
+      return None
+    }
+    //SearchMap writes mapNode of the MRRG it maps, and the cancelled search may still be unwinding on it.
+    val searchMrrg = mrrg.clone
+    searchMrrg.nodes.foreach(n => n.mapNode = null)
+    val searcher = SearchMap.prepare(dfg, searchMrrg, if (filename == null) null else filename + "_start", true,
+      skewLimit)
+    val thread = new Thread(new Runnable {
+      override def run(): Unit = searcher.get()
+    })
+    thread.setDaemon(true)
+    thread.start()
+    thread.join(timeLimit)
+    if (thread.isAlive) {
+      searcher.cancel()
+      //A solution may be reported while cancelling, wait until it is completely published.
+      thread.join()
+    }
+    if (!searcher.findSolution) {
+      println("SearchMap start is not found in " + timeLimit + "ms")
+      return None
+    }
+
+    //match is reset while the search unwinds after report, so the kept solution is read.
+
+    var placement = Map[String, String]()
+    var routing = Map[String, Seq[Set[String]]]()
+    var latency = Map[String, Int]()
+    for (x <- dfg.opNodes.indices) {
+      val op = dfg.opNodes(x)
+      placement += op.name -> mrrg.nodes(searcher.solutionMatch(x)).name
+      if (searcher.DFGLatencyMap != null && searcher.DFGLatencyMap.containsKey(op.name)) {
+        latency += op.name -> searcher.DFGLatencyMap.get(op.name).intValue()
+      }
+      if (op.output != null) {
+        val paths = op.output.output.map { sink =>
+          val path = searcher.solutionPath(x)(dfg.opNodesMap(sink.name))
+          if (path == null) {
+            Set[String]()
+          } else {
+            path.slice(1, path.length - 1).map(n => mrrg.nodes(n).name).toSet
+          }
+        }
+        routing += op.output.name -> paths
+      }
+    }
+    Some(MappingStart(placement, routing, latency))
+  }
+
+  /** Give the start to the mapper.
+   *
+   * @param mapper the ILP mapper
+   * @param start  the start
+   */
+  def setStart(mapper: gurobiMapJava, start: MappingStart): Unit = {
+    start.placement.foreach(pair => mapper.startPlacement.put(pair._1, pair._2))
+    start.routing.foreach(pair => mapper.startRouting.put(pair._1,
+      JavaConverters.seqAsJavaList(pair._2.map(route => JavaConverters.setAsJavaSet(route)))))
+    start.latency.foreach(pair => mapper.startLatency.put(pair._1, Integer.valueOf(pair._2)))
+  }
+
+  /** Dispose the Gurobi environments kept for mapper threads,
+   * which should be called after a batch of mappings.
+   */
+  def releaseEnvironments(): Unit = {
+    grbEnvPool.releaseAll()
+    println(grbEnvPool.report())
+  }
+
 }
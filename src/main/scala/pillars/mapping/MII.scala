@@ -0,0 +1,167 @@
+package pillars.mapping
+
+import pillars.core.MRRGMode.{MEM_MODE, REG_MODE}
+import pillars.core.{MRRG, NodeMRRG, OpEnum, OpcodeTranslator}
+
+import scala.collection.mutable
+
+/** This object computes the lower bound of II (MII) of a DFG on an MRRG.
+ *
+ * ResMII is given by the number of opNodes of each opcode and the function nodes of one cycle supporting it.
+ * Input opNodes can only be placed in the first cycle, so they do not benefit from a larger II.
+ * RecMII is given by the recurrences of the DFG, whose latency should be the same as II.
+ */
+object MII {
+
+  /** Get the reconfiguration cycle of an MRRG node by the prefix of its name, which is 0 without the prefix.
+   *
+   * @param node the MRRG node
+   */
+  def cycleOf(node: NodeMRRG): Int = {
+    val name = node.getName()
+    val index = name.indexOf(":")
+    if (index > 0 && name.substring(0, index).forall(_.isDigit)) {
+      Integer.parseInt(name.substring(0, index))
+    } else {
+      0
+    }
+  }
+
+  /** Get the function nodes in the first cycle of an MRRG unrolled with any II.
+   *
+   * @param mrrg the given MRRG
+   */
+  def firstCycleFunctionNodes(mrrg: MRRG): Seq[NodeMRRG] = {
+    mrrg.nodes.filter(node => node.ops.nonEmpty && cycleOf(node) == 0)
+  }
+
+  /** Get the resource-constrained MII of each opcode class.
+   * An opcode class maps to Int.MaxValue when no II can hold it.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG
+   * @return a map between the name of opcode classes and their MII
+   */
+  def resMIIs(dfg: DFG, mrrg: MRRG): Map[String, Int] = {
+    val functionNodes = firstCycleFunctionNodes(mrrg)
+
+    /** Get the MII of ops placed on nodes.
+     */
+    def bound(ops: Int, nodes: Int, scalable: Boolean): Int = {
+      if (ops == 0) {
+        1
+      } else if (nodes == 0 || (!scalable && ops > nodes)) {
+        Int.MaxValue
+      } else if (!scalable) {
+        1
+      } else {
+        (ops + nodes - 1) / nodes
+      }
+    }
+
+    var ret = Map[String, Int]()
+    val unfixedOps = dfg.opNodes.filter(op => !dfg.fixedMapSRAM.contains(op))
+    for ((opcode, ops) <- unfixedOps.groupBy(_.opcode)) {
+      val nodes = functionNodes.count(_.ops.contains(opcode))
+      ret += OpcodeTranslator.getName(opcode) -> bound(ops.size, nodes, opcode != OpEnum.INPUT)
+    }
+    for ((sramID, ops) <- dfg.fixedMapSRAM.groupBy(_._2)) {
+      val nodes = functionNodes.filter(_.sramID == sramID)
+      val feasible = ops.keys.forall(op => nodes.exists(_.ops.contains(op.opcode)))
+      ret += ("sram " + sramID) -> (if (feasible) bound(ops.size, nodes.size, scalable = true) else Int.MaxValue)
+    }
+    val scalableOps = dfg.opNodes.count(_.opcode != OpEnum.INPUT)
+    val scalableNodes = functionNodes.count(node => node.ops.exists(_ != OpEnum.INPUT))
+    ret += "all" -> bound(scalableOps, scalableNodes, scalable = true)
+    ret
+  }
+
+  /** Get the resource-constrained MII.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG
+   */
+  def resMII(dfg: DFG, mrrg: MRRG): Int = {
+    resMIIs(dfg, mrrg).values.foldLeft(1)(Math.max)
+  }
+
+  /** Get the recurrence-constrained MII.
+   *
+   * Each recurrence, including a self-loop, carries a value to the next iteration,
+   * so its latency should be the same as II.
+   * The latency of a recurrence is at least 1 and the latencies of its memory opNodes.
+   * For each opNode, the recurrence through it with the smallest latency is a lower bound.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG
+   */
+  def recMII(dfg: DFG, mrrg: MRRG): Int = {
+    val functionNodes = firstCycleFunctionNodes(mrrg)
+    val opLatency = dfg.opNodes.map { op =>
+      val nodes = functionNodes.filter(node => node.ops.contains(op.opcode) &&
+        (!dfg.fixedMapSRAM.contains(op) || node.sramID == dfg.fixedMapSRAM(op)))
+      if (nodes.nonEmpty && nodes.forall(node => node.mode == MEM_MODE || node.mode == REG_MODE)) 1 else 0
+    }
+    val fanOut = dfg.opNodes.indices.map(_ => mutable.ArrayBuffer[Int]())
+    for (x <- dfg.opNodes.indices; input <- dfg.opNodes(x).input.values) {
+      fanOut(dfg.opNodesMap(input.name)).append(x)
+    }
+
+    var ret = 1
+    for (source <- dfg.opNodes.indices) {
+      //0-1 BFS of the smallest latency from the output of source back to itself.
+      val distance = Array.fill(dfg.opNodes.size)(Int.MaxValue)
+      val deque = new java.util.ArrayDeque[Int]()
+      var cycle = Int.MaxValue
+      distance(source) = opLatency(source)
+      deque.add(source)
+      while (!deque.isEmpty) {
+        val x = deque.poll()
+        for (y <- fanOut(x)) {
+          if (y == source) {
+            cycle = Math.min(cycle, distance(x))
+          } else if (distance(x) + opLatency(y) < distance(y)) {
+            distance(y) = distance(x) + opLatency(y)
+            if (opLatency(y) == 0) deque.addFirst(y) else deque.addLast(y)
+          }
+        }
+      }
+      if (cycle != Int.MaxValue) {
+        ret = Math.max(ret, Math.max(1, cycle))
+      }
+    }
+    ret
+  }
+
+  /** Get the MII, which is the larger one of ResMII and RecMII.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG
+   */
+  def apply(dfg: DFG, mrrg: MRRG): Int = {
+    Math.max(resMII(dfg, mrrg), recMII(dfg, mrrg))
+  }
+
+  /** Check whether the II of the DFG is not smaller than the MII, and print the reason when it is.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG unrolled with the II of the DFG
+   */
+  def check(dfg: DFG, mrrg: MRRG): Boolean = {
+    val res = resMIIs(dfg, mrrg)
+    val rec = recMII(dfg, mrrg)
+    val failed = res.filter(_._2 > dfg.II)
+    if (failed.nonEmpty || rec > dfg.II) {
+      for ((opClass, bound) <- failed) {
+        println("II " + dfg.II + " is below the ResMII of " + opClass + ": " +
+          (if (bound == Int.MaxValue) "infeasible" else bound))
+      }
+      if (rec > dfg.II) {
+        println("II " + dfg.II + " is below the RecMII: " + rec)
+      }
+      false
+    } else {
+      true
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package pillars.mapping
+
+import java.io.{File, FileWriter}
+import java.lang.management.{ManagementFactory, MemoryType}
+import java.util.Locale
+import java.util.concurrent.{Callable, Executors, ThreadFactory, TimeUnit, TimeoutException}
+
+import pillars.core.MRRG
+
+import scala.collection.JavaConverters
+import scala.io.Source
+
+/** This object runs the end-to-end mapping benchmark and checks it against a baseline.
+ *
+ * Every DFG under "dfg/" is mapped to every MRRG under "mrrg/" whose II is selected, by each engine,
+ * and each case is repeated. The II of an MRRG is given by "-iiN" in its file name.
+ * A case records the success rate, and the medians of time-to-first-solution, time-to-best,
+ * wall time, peak heap and the quality of the mapped kernel over its successful runs.
+ *
+ * A case is a regression when it succeeded in the baseline but fails now,
+ * or when its time-to-first-solution is slower than the baseline by more than the threshold
+ * and by more than minSlowdown milliseconds.
+ *
+ * @example Run "sbt 'runMain pillars.mapping.MappingBenchmark engines=ilp,search iis=1,2'" to check against
+ *          "bench/baseline.csv", and add "record" to write the results as the new baseline.
+ */
+object MappingBenchmark {
+
+  /** The configuration of a benchmark.
+   *
+   * @param dfgDir      the directory of DFGs, each DFG is "name/name.dot"
+   * @param mrrgDir     the directory of MRRG TXTs
+   * @param engines     the names of engines, which are "ilp", "search" and "omt"
+   * @param IIs         the IIs of MRRGs to be mapped
+   * @param repeats     the number of runs of each case
+   * @param timeout     the time limit of a run in milliseconds
+   * @param options     the options of mapping
+   * @param workDir     the directory of mapping results
+   * @param baseline    the CSV file of the baseline
+   * @param output      the CSV file of the results
+   * @param threshold   the allowed relative slowdown of time-to-first-solution
+   * @param minSlowdown the allowed absolute slowdown in milliseconds, which hides noises of short runs
+   */
+  case class BenchmarkConfig(dfgDir: String = "dfg", mrrgDir: String = "mrrg",
+                             engines: Seq[String] = Seq("ilp", "search"), IIs: Seq[Int] = Seq(1, 2),
+                             repeats: Int = 3, timeout: Long = 600000,
+                             options: MappingOptions = MappingOptions(trackProgress = true),
+                             workDir: String = "bench/output", baseline: String = "bench/baseline.csv",
+                             output: String = "bench/results.csv",
+                             threshold: Double = 0.2, minSlowdown: Double = 500)
+
+  /** A run of a case.
+   *
+   * @param success        a parameter indicating whether a validated mapping is found in time
+   * @param firstSolution  the time to the first solution in milliseconds
+   * @param bestSolution   the time to the best solution in milliseconds
+   * @param wallTime       the wall time of the run in milliseconds
+   * @param peakHeap       the peak usage of the heap in MB
+   * @param latency        the largest latency of opNodes in the mapped kernel
+   * @param routingNodes   the number of MRRG routing nodes used by the mapped kernel, -1 when not annotated
+   */
+  case class BenchmarkRun(success: Boolean, firstSolution: Double, bestSolution: Double, wallTime: Double,
+                          peakHeap: Double, latency: Int, routingNodes: Int)
+
+  /** The result of a case, whose times, heap and quality are medians of successful runs.
+   */
+  case class CaseResult(dfg: String, mrrg: String, II: Int, engine: String, successRate: Double,
+                        firstSolution: Double, bestSolution: Double, wallTime: Double, peakHeap: Double,
+                        latency: Int, routingNodes: Int) {
+    def key: (String, String, String) = (dfg, mrrg, engine)
+
+    def toCsv: String = Seq(dfg, mrrg, II, engine, "%.3f".formatLocal(Locale.ROOT, successRate),
+      number(firstSolution), number(bestSolution), number(wallTime), number(peakHeap), latency, routingNodes)
+      .mkString(",")
+
+    def number(value: Double): String = "%.1f".formatLocal(Locale.ROOT, value)
+  }
+
+  val csvHeader = "dfg,mrrg,II,engine,successRate,firstSolutionMs,bestSolutionMs,wallTimeMs,peakHeapMB," +
+    "latency,routingNodes"
+
+  def newEngine(name: String): MappingEngine = name match {
+    case "ilp" => new ILPEngine
+    case "search" => new SearchEngine
+    case "omt" => new OmtEngine
+    case _ => throw new IllegalArgumentException("Unknown engine " + name)
+  }
+
+  /** Get the II of an MRRG TXT by its name, 1 without "-iiN".
+   */
+  def IIOf(mrrgFile: File): Int = {
+    "-ii(\\d+)".r.findFirstMatchIn(mrrgFile.getName).map(m => m.group(1).toInt).getOrElse(1)
+  }
+
+  /** Run a mapping in a daemon thread, and cancel it when the time limit is reached.
+   */
+  def runOnce(engine: MappingEngine, dfg: DFG, mrrg: MRRG, filename: String, config: BenchmarkConfig): BenchmarkRun = {
+    val heapPools = JavaConverters.asScalaBuffer(ManagementFactory.getMemoryPoolMXBeans)
+      .filter(_.getType == MemoryType.HEAP)
+    System.gc()
+    heapPools.foreach(_.resetPeakUsage())
+    val executor = Executors.newSingleThreadExecutor(new ThreadFactory {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r)
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    val start = System.nanoTime()
+    val future = executor.submit(new Callable[Boolean] {
+      override def call(): Boolean = engine.mapping(dfg, mrrg, filename, config.options)
+    })
+    val success = try {
+      future.get(config.timeout, TimeUnit.MILLISECONDS)
+    } catch {
+      case _: TimeoutException =>
+        engine.cancel()
+        println("Timeout: " + filename)
+        //Wait for the cancelled mapping, so that it does not overlap the next run.
+        try {
+          future.get(config.timeout, TimeUnit.MILLISECONDS)
+        } catch {
+          case _: Exception =>
+        }
+        false
+      case e: Exception =>
+        println("Fail: " + filename + ": " + e.getMessage)
+        false
+    }
+    val wallTime = (System.nanoTime() - start) / 1e6
+    executor.shutdownNow()
+    val peakHeap = heapPools.map(_.getPeakUsage.getUsed).sum / 1048576.0
+
+    val metrics = engine.metrics
+    val firstSolution = if (metrics == null) wallTime else metrics.get("first_incumbent_ms", wallTime.toLong).toDouble
+    val bestSolution = if (metrics == null) wallTime else metrics.get("best_incumbent_ms", wallTime.toLong).toDouble
+    val latency = if (success && dfg.opNodes.nonEmpty) dfg.opNodes.map(_.latency).max else -1
+    val routingNodes = if (success && mrrg.nodes.exists(n => n.ops.nonEmpty && n.mapNode != null)) {
+      mrrg.nodes.count(n => n.ops.isEmpty && n.mapNode != null)
+    } else {
+      -1
+    }
+    BenchmarkRun(success, firstSolution, bestSolution, wallTime, peakHeap, latency, routingNodes)
+  }
+
+  def median(values: Seq[Double]): Double = {
+    if (values.isEmpty) {
+      Double.NaN
+    } else {
+      val sorted = values.sorted
+      if (sorted.size % 2 == 1) sorted(sorted.size / 2) else (sorted(sorted.size / 2 - 1) + sorted(sorted.size / 2)) / 2
+    }
+  }
+
+  /** Run all cases of the configuration.
+   *
+   * @param config the configuration of the benchmark
+   * @return the results of cases
+   */
+  def run(config: BenchmarkConfig): Seq[CaseResult] = {
+    val dfgFiles = Option(new File(config.dfgDir).listFiles()).getOrElse(Array[File]())
+      .filter(_.isDirectory).map(dir => new File(dir, dir.getName + ".dot")).filter(_.exists()).sortBy(_.getName)
+    val mrrgFiles = Option(new File(config.mrrgDir).listFiles()).getOrElse(Array[File]())
+      .filter(_.getName.endsWith(".txt")).filter(file => config.IIs.contains(IIOf(file))).sortBy(_.getName)
+    new File(config.workDir).mkdirs()
+
+    var results = Seq[CaseResult]()
+    for (mrrgFile <- mrrgFiles; dfgFile <- dfgFiles; engineName <- config.engines) {
+      val II = IIOf(mrrgFile)
+      val dfgName = dfgFile.getName.stripSuffix(".dot")
+      val mrrgName = mrrgFile.getName.stripSuffix(".txt")
+      val runs = (0 until config.repeats).map { i =>
+        val dfg = DotReader.loadDot(dfgFile.getPath, II)
+        val mrrg = new MRRG()
+        mrrg.loadTXT(mrrgFile.getPath)
+        val filename = new File(config.workDir, dfgName + "_" + mrrgName + "_" + engineName + "_" + i).getPath
+        println("Benchmark: " + dfgName + " -> " + mrrgName + " by " + engineName + ", run " + i)
+        runOnce(newEngine(engineName), dfg, mrrg, filename, config)
+      }
+      val succeeded = runs.filter(_.success)
+      val result = CaseResult(dfgName, mrrgName, II, engineName, succeeded.size.toDouble / runs.size,
+        median(succeeded.map(_.firstSolution)), median(succeeded.map(_.bestSolution)),
+        median(succeeded.map(_.wallTime)), median(succeeded.map(_.peakHeap)),
+        if (succeeded.isEmpty) -1 else median(succeeded.map(_.latency.toDouble)).toInt,
+        if (succeeded.isEmpty) -1 else median(succeeded.map(_.routingNodes.toDouble)).toInt)
+      println(result.toCsv)
+      results :+= result
+    }
+    results
+  }
+
+  /** Write results into a CSV file.
+   */
+  def write(results: Seq[CaseResult], filename: String): Unit = {
+    val file = new File(filename)
+    if (file.getParentFile != null) {
+      file.getParentFile.mkdirs()
+    }
+    val writer = new FileWriter(file)
+    writer.write(csvHeader + "\n")
+    results.foreach(result => writer.write(result.toCsv + "\n"))
+    writer.close()
+  }
+
+  /** Read results from a CSV file, which is empty when the file does not exist.
+   */
+  def read(filename: String): Seq[CaseResult] = {
+    if (!new File(filename).exists()) {
+      return Seq()
+    }
+    val buffer = Source.fromFile(filename)
+    val lines = buffer.getLines().toList
+    buffer.close()
+    lines.drop(1).filter(_.trim.nonEmpty).map { line =>
+      val items = line.split(",")
+      CaseResult(items(0), items(1), items(2).toInt, items(3), items(4).toDouble, items(5).toDouble,
+        items(6).toDouble, items(7).toDouble, items(8).toDouble, items(9).toInt, items(10).toInt)
+    }
+  }
+
+  /** Compare results with the baseline.
+   *
+   * @return the descriptions of regressions
+   */
+  def compare(results: Seq[CaseResult], baseline: Seq[CaseResult], config: BenchmarkConfig): Seq[String] = {
+    val baselineMap = baseline.map(result => result.key -> result).toMap
+    results.flatMap { result =>
+      baselineMap.get(result.key) match {
+        case None =>
+          println("New case: " + result.key)
+          None
+        case Some(base) if base.successRate > 0 && result.successRate == 0 =>
+          Some(result.key + " fails, which succeeded in the baseline")
+        case Some(base) if result.successRate > 0 && base.successRate > 0 &&
+          result.firstSolution > base.firstSolution * (1 + config.threshold) &&
+          result.firstSolution - base.firstSolution > config.minSlowdown =>
+          Some(result.key + " slows down from " + base.firstSolution + "ms to " + result.firstSolution + "ms")
+        case _ =>
+          None
+      }
+    }
+  }
+
+  /** Parse arguments like "engines=ilp,search iis=1,2 repeats=3 timeout=600000 threshold=0.2 record".
+   */
+  def parse(args: Array[String]): (BenchmarkConfig, Boolean) = {
+    var config = BenchmarkConfig()
+    var record = false
+    for (arg <- args) {
+      val pair = arg.split("=", 2)
+      pair(0) match {
+        case "record" => record = true
+        case "dfgDir" => config = config.copy(dfgDir = pair(1))
+        case "mrrgDir" => config = config.copy(mrrgDir = pair(1))
+        case "engines" => config = config.copy(engines = pair(1).split(",").toSeq)
+        case "iis" => config = config.copy(IIs = pair(1).split(",").map(_.toInt).toSeq)
+        case "repeats" => config = config.copy(repeats = pair(1).toInt)
+        case "timeout" => config = config.copy(timeout = pair(1).toLong)
+        case "workDir" => config = config.copy(workDir = pair(1))
+        case "baseline" => config = config.copy(baseline = pair(1))
+        case "output" => config = config.copy(output = pair(1))
+        case "threshold" => config = config.copy(threshold = pair(1).toDouble)
+        case "minSlowdown" => config = config.copy(minSlowdown = pair(1).toDouble)
+        case _ => throw new IllegalArgumentException("Unknown argument " + arg)
+      }
+    }
+    (config, record)
+  }
+
+  def main(args: Array[String]): Unit = {
+    val (config, record) = parse(args)
+    val results = run(config)
+    write(results, config.output)
+    if (record) {
+      write(results, config.baseline)
+      println("Baseline is written into " + config.baseline)
+      return
+    }
+    val regressions = compare(results, read(config.baseline), config)
+    if (regressions.nonEmpty) {
+      regressions.foreach(regression => println("\033[31;4m" + "Regression: " + regression + "\033[0m"))
+      System.exit(1)
+    }
+    println("No regression against " + config.baseline)
+  }
+}
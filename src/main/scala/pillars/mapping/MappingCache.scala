@@ -0,0 +1,236 @@
+package pillars.mapping
+
+import java.io.{File, FileWriter}
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, StandardCopyOption}
+import java.security.MessageDigest
+import java.util
+
+import pillars.core.MRRG
+import pillars.hardware.PillarsConfig.USE_RELATIVE_SKEW
+
+import scala.collection.JavaConverters
+import scala.io.Source
+
+/** This object is a persistent on-disk cache of mapping results.
+ *
+ * An entry is addressed by the hash of the DFG structure, the MRRG nodes and edges, the II and the mapper options.
+ * It keeps the result files ("_r.txt" and "_i.txt") and the state a mapper writes into the DFG and the MRRG,
+ * so that a hit gives the same DFG and MRRG as the original mapping.
+ * Entries are evicted when they are older than maxAge, or when the cache is larger than maxBytes.
+ */
+object MappingCache {
+  /** The directory of the cache.
+   */
+  var directory = "mapping-cache"
+
+  /** The maximal total size of entries in bytes.
+   */
+  var maxBytes: Long = 256L * 1024 * 1024
+
+  /** The maximal age of entries in milliseconds.
+   */
+  var maxAge: Long = 30L * 24 * 3600 * 1000
+
+  /** Get the key of a mapping.
+   *
+   * @param engine  the name of the mapper
+   * @param dfg     the given DFG
+   * @param mrrg    the given MRRG
+   * @param options the mapper options
+   */
+  def key(engine: String, dfg: DFG, mrrg: MRRG, options: Any*): String = {
+    val builder = new StringBuilder()
+    builder.append(engine).append("\n")
+    builder.append("II ").append(dfg.II).append(" relativeSkew ").append(USE_RELATIVE_SKEW).append("\n")
+    builder.append("options ").append(options.mkString(" ")).append("\n")
+    for (op <- dfg.opNodes) {
+      builder.append("op ").append(op.name).append(" ").append(op.opcode)
+      for (operand <- op.input.keys.toArray.sorted) {
+        builder.append(" ").append(operand).append(":").append(op.input(operand).name)
+      }
+      if (op.output != null) {
+        builder.append(" -> ").append(op.output.name)
+      }
+      builder.append("\n")
+    }
+    for (value <- dfg.valNodes) {
+      builder.append("val ").append(value.name)
+      for (i <- value.output.indices) {
+        builder.append(" ").append(value.output(i).name).append(":").append(value.outputOperand(i))
+      }
+      builder.append("\n")
+    }
+    for ((op, sram) <- dfg.fixedMapSRAM.toArray.sortBy(_._1.name)) {
+      builder.append("sram ").append(op.name).append(" ").append(sram).append("\n")
+    }
+    for (node <- mrrg.nodes) {
+      builder.append("node ").append(node.name).append(" ").append(node.mode).append(" ").append(node.sramID)
+      builder.append(" [").append(node.ops.mkString(",")).append("]")
+      for (out <- node.fanOut) {
+        builder.append(" ").append(out.name)
+      }
+      builder.append("\n")
+    }
+    val digest = MessageDigest.getInstance("SHA-256").digest(builder.toString.getBytes(StandardCharsets.UTF_8))
+    digest.map(b => "%02x".format(b)).mkString
+  }
+
+  /** Load a cached mapping into the DFG and the MRRG, and write its result files.
+   *
+   * @param key      the key of the mapping
+   * @param dfg      the given DFG
+   * @param mrrg     the given MRRG
+   * @param filename the name we will used to write result
+   * @return the stored result string of the mapper when the cache hits
+   */
+  def load(key: String, dfg: DFG, mrrg: MRRG, filename: String): Option[String] = synchronized {
+    val entry = new File(directory, key)
+    val stateFile = new File(entry, "state.txt")
+    if (stateFile.exists()) {
+      Some(loadEntry(entry, dfg, mrrg, filename))
+    } else {
+      None
+    }
+  }
+
+  def loadEntry(entry: File, dfg: DFG, mrrg: MRRG, filename: String): String = {
+    for (suffix <- Seq("_r.txt", "_i.txt")) {
+      val source = new File(entry, suffix.substring(1))
+      if (source.exists() && filename != null) {
+        Files.copy(source.toPath, new File(filename + suffix).toPath, StandardCopyOption.REPLACE_EXISTING)
+      }
+    }
+
+    var result = "success"
+    val source = Source.fromFile(new File(entry, "state.txt"))
+    for (line <- source.getLines()) {
+      val items = line.split("\t", -1)
+      items(0) match {
+        case "result" => result = items(1)
+        case "mapOp" => mrrg.nodes(mrrg.nodeMap(items(1))).mapNode = dfg.applyOp(items(2))
+        case "mapVal" => mrrg.nodes(mrrg.nodeMap(items(1))).mapNode = dfg.applyVal(items(2))
+        case "op" =>
+          val op = dfg.applyOp(items(1))
+          op.latency = items(2).toInt
+          op.skew = items(3).toInt
+          op.annulateLatency = items(4).toInt
+          op.commutated = items(5).toBoolean
+        case "synthesizable" => dfg.synthesizable = items(1).toBoolean
+        case "regNum" => dfg.regNum = items(1).toInt
+        case "regConnect" => dfg.regConnect.put(Integer.valueOf(items(1)), readList(items(2)))
+        case "func2reg" => dfg.func2regMap.put(Integer.valueOf(items(1)), readList(items(2)))
+        case "reg2func" => dfg.reg2funcMap.put(Integer.valueOf(items(1)), readNestedList(items(2)))
+        case "funcDirect2func" => dfg.funcDirect2funcMap.put(Integer.valueOf(items(1)), readNestedList(items(2)))
+        case _ =>
+      }
+    }
+    source.close()
+    entry.setLastModified(System.currentTimeMillis())
+    println("Mapping cache hit: " + entry.getName)
+    result
+  }
+
+  /** Store a successful mapping written in the DFG, the MRRG and the result files.
+   *
+   * @param key      the key of the mapping
+   * @param dfg      the mapped DFG
+   * @param mrrg     the mapped MRRG
+   * @param filename the name used to write result
+   * @param result   the result string of the mapper
+   */
+  def store(key: String, dfg: DFG, mrrg: MRRG, filename: String, result: String): Unit = synchronized {
+    val entry = new File(directory, key)
+    entry.mkdirs()
+    for (suffix <- Seq("_r.txt", "_i.txt")) {
+      val source = new File(filename + suffix)
+      if (filename != null && source.exists()) {
+        Files.copy(source.toPath, new File(entry, suffix.substring(1)).toPath, StandardCopyOption.REPLACE_EXISTING)
+      }
+    }
+
+    val state = new FileWriter(new File(entry, "state.txt"))
+    state.write("result\t" + result.replace("\t", " ") + "\n")
+    for (node <- mrrg.nodes if node.mapNode != null) {
+      node.mapNode match {
+        case op: OpNode => state.write("mapOp\t" + node.name + "\t" + op.name + "\n")
+        case value: ValNode => state.write("mapVal\t" + node.name + "\t" + value.name + "\n")
+        case _ =>
+      }
+    }
+    for (op <- dfg.opNodes) {
+      state.write("op\t" + op.name + "\t" + op.latency + "\t" + op.skew + "\t" +
+        op.annulateLatency + "\t" + op.commutated + "\n")
+    }
+    state.write("synthesizable\t" + dfg.synthesizable + "\n")
+    state.write("regNum\t" + dfg.regNum + "\n")
+    dfg.regConnect.foreach(kv => state.write("regConnect\t" + kv._1 + "\t" + writeList(kv._2) + "\n"))
+    dfg.func2regMap.foreach(kv => state.write("func2reg\t" + kv._1 + "\t" + writeList(kv._2) + "\n"))
+    dfg.reg2funcMap.foreach(kv => state.write("reg2func\t" + kv._1 + "\t" + writeNestedList(kv._2) + "\n"))
+    dfg.funcDirect2funcMap.foreach(kv =>
+      state.write("funcDirect2func\t" + kv._1 + "\t" + writeNestedList(kv._2) + "\n"))
+    state.flush()
+    state.close()
+
+    evict()
+  }
+
+  /** Remove entries older than maxAge, then remove the least recently used entries until the cache fits maxBytes.
+   */
+  def evict(): Unit = synchronized {
+    val root = new File(directory)
+    if (root.isDirectory) {
+      val now = System.currentTimeMillis()
+      var entries = root.listFiles().filter(_.isDirectory).sortBy(_.lastModified())
+      for (entry <- entries if now - entry.lastModified() > maxAge) {
+        remove(entry)
+      }
+      entries = entries.filter(_.exists())
+      var total = entries.map(entrySize).sum
+      for (entry <- entries if total > maxBytes) {
+        total -= entrySize(entry)
+        remove(entry)
+      }
+    }
+  }
+
+  /** Remove all entries.
+   */
+  def clear(): Unit = synchronized {
+    val root = new File(directory)
+    if (root.isDirectory) {
+      root.listFiles().filter(_.isDirectory).foreach(remove)
+    }
+  }
+
+  def entrySize(entry: File): Long = {
+    entry.listFiles().map(_.length()).sum
+  }
+
+  def remove(entry: File): Unit = {
+    entry.listFiles().foreach(_.delete())
+    entry.delete()
+  }
+
+  def writeList(list: util.List[Integer]): String = {
+    JavaConverters.asScalaBuffer(list).mkString(",")
+  }
+
+  def writeNestedList(list: util.List[util.List[Integer]]): String = {
+    JavaConverters.asScalaBuffer(list).map(writeList).mkString(";")
+  }
+
+  def readList(str: String): util.List[Integer] = {
+    val list = new util.ArrayList[Integer]()
+    str.split(",").filter(_.nonEmpty).foreach(i => list.add(Integer.valueOf(i)))
+    list
+  }
+
+  def readNestedList(str: String): util.List[util.List[Integer]] = {
+    val list = new util.ArrayList[util.List[Integer]]()
+    if (str.nonEmpty) {
+      str.split(";", -1).foreach(i => list.add(readList(i)))
+    }
+    list
+  }
+}
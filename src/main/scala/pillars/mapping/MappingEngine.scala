@@ -0,0 +1,223 @@
+package pillars.mapping
+
+import java.io.File
+import java.nio.file.{Files, StandardCopyOption}
+import java.util.concurrent.{Callable, ExecutorCompletionService, Executors, ThreadFactory, TimeUnit}
+
+import pillars.core.MRRG
+
+/** Options shared by all mapping engines.
+ *
+ * @param separatedPR     a parameter indicating whether placement and routing should be separated
+ * @param scheduleControl a parameter indicating whether the latency and skew should be controlled and obtained
+ * @param skewLimit       the limit of skew which only is used when scheduleControl is ture
+ * @param latencyLimit    the limit of latency which only is used when scheduleControl is ture
+ * @param trackProgress   a parameter indicating whether the solver progress is tracked,
+ *                        so that the times of the first and the best solutions are in metrics
+ * @param searchThreads   the number of workers running shuffled restarts at the same time in SearchMap
+ * @param searchTimeLimit the time limit of SearchMap in milliseconds, 0 for no limit
+ */
+case class MappingOptions(separatedPR: Boolean = false, scheduleControl: Boolean = false,
+                          skewLimit: Int = 2, latencyLimit: Int = 32, trackProgress: Boolean = false,
+                          searchThreads: Int = 1, searchTimeLimit: Long = 0)
+
+/** A mapping engine maps a DFG to an MRRG and writes results to files related to filename.
+ * An engine can be cancelled from another thread, then its mapping ends as soon as possible.
+ */
+trait MappingEngine {
+  /** The name of this engine.
+   */
+  def name: String
+
+  /** Map the given DFG to the given MRRG.
+   *
+   * @return true if a validated mapping is found
+   */
+  def mapping(dfg: DFG, mrrg: MRRG, filename: String, options: MappingOptions): Boolean
+
+  /** Cancel the running mapping.
+   */
+  def cancel(): Unit
+
+  /** The phase timing and counters of the latest mapping, or null when the engine does not give them.
+   */
+  def metrics: mappingMetrics = null
+
+  /** Check whether all opNodes of the DFG are mapped to nodes of the MRRG.
+   */
+  def allOpNodesMapped(dfg: DFG, mrrg: MRRG): Boolean = {
+    val mappedNodes = mrrg.nodes.map(n => n.mapNode).filter(n => n != null).toSet
+    dfg.opNodes.forall(op => mappedNodes.contains(op))
+  }
+}
+
+/** The mapping engine using ILPMap.
+ */
+class ILPEngine extends MappingEngine {
+  @volatile var mapper: gurobiMapJava = null
+  @volatile var cancelled = false
+
+  def name: String = "ilp"
+
+  def mapping(dfg: DFG, mrrg: MRRG, filename: String, options: MappingOptions): Boolean = {
+    try {
+      val elapsedTime = ILPMap.mapping(dfg, mrrg, filename = filename,
+        separatedPR = options.separatedPR, scheduleControl = options.scheduleControl,
+        skewLimit = options.skewLimit, latencyLimit = options.latencyLimit,
+        //The LP files have fixed names, which engines running at the same time would overwrite.
+        dumpLP = false,
+        onMapperCreated = m => {
+          mapper = m
+          m.collectMetrics = options.trackProgress
+          if (cancelled) {
+            m.cancel()
+          }
+        })
+      elapsedTime >= 0 && mapper.result.contains("success") && allOpNodesMapped(dfg, mrrg)
+    } finally {
+      //Engines run on threads created by races, benchmarks and sweeps, so the environment of this thread is released.
+      grbEnvPool.release()
+    }
+  }
+
+  override def metrics: mappingMetrics = if (mapper == null) null else mapper.metrics
+
+  def cancel(): Unit = {
+    cancelled = true
+    if (mapper != null) {
+      mapper.cancel()
+    }
+  }
+}
+
+/** The mapping engine using SearchMap.
+ */
+class SearchEngine extends MappingEngine {
+  @volatile var mapper: searchMap = null
+  @volatile var cancelled = false
+
+  def name: String = "search"
+
+  def mapping(dfg: DFG, mrrg: MRRG, filename: String, options: MappingOptions): Boolean = {
+    val elapsedTime = SearchMap.mapping(dfg, mrrg, filename,
+      scheduleControl = options.scheduleControl, skewLimit = options.skewLimit, threads = options.searchThreads,
+      timeLimit = options.searchTimeLimit,
+      onMapperCreated = m => {
+        mapper = m
+        if (cancelled) {
+          m.cancel()
+        }
+      })
+    elapsedTime >= 0 && mapper.findSolution
+  }
+
+  override def metrics: mappingMetrics = if (mapper == null) null else mapper.metrics
+
+  def cancel(): Unit = {
+    cancelled = true
+    if (mapper != null) {
+      mapper.cancel()
+    }
+  }
+}
+
+/** The mapping engine using OmtMap (Z3ProverMap).
+ * The Z3 context is owned by Z3ProverMap, so this engine can not be interrupted,
+ * and a cancelled race simply stops waiting for it.
+ */
+class OmtEngine extends MappingEngine {
+  def name: String = "omt"
+
+  def mapping(dfg: DFG, mrrg: MRRG, filename: String, options: MappingOptions): Boolean = {
+    OmtMap.mapping(dfg, mrrg, filename = filename,
+      separatedPR = options.separatedPR, scheduleControl = options.scheduleControl,
+      skewLimit = options.skewLimit, latencyLimit = options.latencyLimit)
+    allOpNodesMapped(dfg, mrrg)
+  }
+
+  def cancel(): Unit = {}
+}
+
+/** This object races several mapping engines on the same DFG and MRRG.
+ */
+object MappingRace {
+
+  /** The result of a race.
+   *
+   * @param engine the engine producing the mapping
+   * @param dfg    the DFG mapped by the engine
+   * @param mrrg   the MRRG holding the mapping
+   */
+  case class RaceResult(engine: MappingEngine, dfg: DFG, mrrg: MRRG)
+
+  /** Run engines in parallel threads, the first validated mapping wins and the other engines are cancelled.
+   *
+   * Engines write the DFG and the MRRG when mapping, so each engine works on its own DFG given by loadDFG
+   * and its own clone of mrrg, and writes results to files named filename_engine.
+   * The results of the winner are copied to "filename_r.txt" and "filename_i.txt".
+   *
+   * @param loadDFG  the function producing the DFG to be mapped
+   * @param mrrg     the given MRRG, which is not modified
+   * @param filename the name we will used to write result
+   * @param options  the options shared by engines
+   * @param engines  the engines in the race
+   * @param timeout  the time limit of the race in milliseconds
+   * @return the result of the winner, or None when no engine succeeds
+   */
+  def race(loadDFG: () => DFG, mrrg: MRRG, filename: String, options: MappingOptions = MappingOptions(),
+           engines: Seq[MappingEngine] = Seq(new ILPEngine, new SearchEngine),
+           timeout: Long = 3600000): Option[RaceResult] = {
+    val executor = Executors.newFixedThreadPool(engines.size, new ThreadFactory {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r)
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    val completion = new ExecutorCompletionService[Option[RaceResult]](executor)
+    for (engine <- engines) {
+      val dfg = loadDFG()
+      val engineMrrg = mrrg.clone
+      engineMrrg.nodes.foreach(n => n.mapNode = null)
+      completion.submit(new Callable[Option[RaceResult]] {
+        override def call(): Option[RaceResult] = {
+          try {
+            if (engine.mapping(dfg, engineMrrg, filename + "_" + engine.name, options)) {
+              Some(RaceResult(engine, dfg, engineMrrg))
+            } else {
+              None
+            }
+          } catch {
+            case e: Exception =>
+              println("Engine " + engine.name + " fails: " + e.getMessage)
+              None
+          }
+        }
+      })
+    }
+
+    val deadline = System.currentTimeMillis() + timeout
+    var winner: Option[RaceResult] = None
+    var remaining = engines.size
+    while (winner.isEmpty && remaining > 0 && System.currentTimeMillis() < deadline) {
+      val future = completion.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+      if (future != null) {
+        remaining -= 1
+        winner = future.get()
+      }
+    }
+    engines.foreach(engine => if (winner.isEmpty || winner.get.engine != engine) engine.cancel())
+    executor.shutdownNow()
+
+    winner.foreach { result =>
+      println("Race winner: " + result.engine.name)
+      for (suffix <- Seq("_r.txt", "_i.txt")) {
+        val source = new File(filename + "_" + result.engine.name + suffix)
+        if (source.exists()) {
+          Files.copy(source.toPath, new File(filename + suffix).toPath, StandardCopyOption.REPLACE_EXISTING)
+        }
+      }
+    }
+    winner
+  }
+}
@@ -295,8 +295,6 @@ object OmtMap {
       mapper.elapsedTime
     }
 
-    System.exit(-1) // for debug purpose
-
     elapsedTime
   }
 }
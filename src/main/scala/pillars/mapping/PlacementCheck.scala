@@ -0,0 +1,148 @@
+package pillars.mapping
+
+import pillars.core.{MRRG, NodeMRRG, OpcodeTranslator}
+
+import scala.collection.mutable
+
+/** This object checks whether all opNodes of a DFG can be placed on distinct function nodes of an MRRG.
+ *
+ * The compatibility graph between opNodes and function nodes is given by the supported opcodes
+ * and the fixed SRAM of opNodes. A maximum matching of it is found by Hopcroft-Karp.
+ * When the matching does not cover all opNodes, a set of opNodes with fewer compatible function nodes
+ * (a violation of Hall's condition) is reported by opcodes.
+ */
+object PlacementCheck {
+
+  /** The result of a placement check.
+   *
+   * @param matched        the size of the maximum matching
+   * @param numOps         the number of opNodes
+   * @param oversubscribed the number of opNodes of each opcode in the over-subscribed set
+   * @param capacity       the number of function nodes compatible with the over-subscribed set
+   */
+  case class CheckResult(matched: Int, numOps: Int, oversubscribed: Map[String, Int], capacity: Int) {
+    def feasible: Boolean = matched == numOps
+
+    override def toString: String = {
+      if (feasible) {
+        "placement is feasible"
+      } else {
+        "placement is infeasible: " + oversubscribed.map(pair => pair._2 + " " + pair._1).mkString(", ") +
+          " share " + capacity + " function nodes"
+      }
+    }
+  }
+
+  /** Get the compatible function nodes of each opNode.
+   *
+   * @param dfg           the given DFG
+   * @param functionNodes the function nodes of the MRRG
+   */
+  def compatibility(dfg: DFG, functionNodes: Seq[NodeMRRG]): Array[Array[Int]] = {
+    dfg.opNodes.map { op =>
+      functionNodes.indices.filter { f =>
+        val node = functionNodes(f)
+        node.ops.contains(op.opcode) && (!dfg.fixedMapSRAM.contains(op) || node.sramID == dfg.fixedMapSRAM(op))
+      }.toArray
+    }.toArray
+  }
+
+  /** Check the placement of the DFG on the MRRG.
+   *
+   * @param dfg  the given DFG
+   * @param mrrg the given MRRG
+   */
+  def check(dfg: DFG, mrrg: MRRG): CheckResult = {
+    val functionNodes = mrrg.nodes.filter(_.ops.nonEmpty)
+    val adjacency = compatibility(dfg, functionNodes)
+    val numOps = adjacency.length
+    val numNodes = functionNodes.size
+    val matchOp = Array.fill(numOps)(-1)
+    val matchNode = Array.fill(numNodes)(-1)
+    val level = Array.fill(numOps)(0)
+
+    /** Build the layers of the alternating paths from free opNodes, return true if a free node is reached.
+     */
+    def bfs(): Boolean = {
+      val queue = new mutable.Queue[Int]()
+      for (op <- 0 until numOps) {
+        if (matchOp(op) == -1) {
+          level(op) = 0
+          queue.enqueue(op)
+        } else {
+          level(op) = -1
+        }
+      }
+      var found = false
+      while (queue.nonEmpty) {
+        val op = queue.dequeue()
+        for (node <- adjacency(op)) {
+          val next = matchNode(node)
+          if (next == -1) {
+            found = true
+          } else if (level(next) == -1) {
+            level(next) = level(op) + 1
+            queue.enqueue(next)
+          }
+        }
+      }
+      found
+    }
+
+    val iterator = Array.fill(numOps)(0)
+
+    /** Find an augmenting path along the layers.
+     */
+    def dfs(op: Int): Boolean = {
+      while (iterator(op) < adjacency(op).length) {
+        val node = adjacency(op)(iterator(op))
+        iterator(op) += 1
+        val next = matchNode(node)
+        if (next == -1 || (level(next) == level(op) + 1 && dfs(next))) {
+          matchOp(op) = node
+          matchNode(node) = op
+          return true
+        }
+      }
+      level(op) = -1
+      false
+    }
+
+    var matched = 0
+    while (bfs()) {
+      java.util.Arrays.fill(iterator, 0)
+      for (op <- 0 until numOps if matchOp(op) == -1) {
+        if (dfs(op)) {
+          matched += 1
+        }
+      }
+    }
+
+    if (matched == numOps) {
+      CheckResult(matched, numOps, Map(), numNodes)
+    } else {
+      //The opNodes reachable from free opNodes by alternating paths have fewer neighbors than themselves.
+      val reachedOps = mutable.Set[Int]()
+      val reachedNodes = mutable.Set[Int]()
+      val queue = new mutable.Queue[Int]()
+      for (op <- 0 until numOps if matchOp(op) == -1) {
+        reachedOps += op
+        queue.enqueue(op)
+      }
+      while (queue.nonEmpty) {
+        val op = queue.dequeue()
+        for (node <- adjacency(op) if !reachedNodes.contains(node)) {
+          reachedNodes += node
+          val next = matchNode(node)
+          if (next != -1 && !reachedOps.contains(next)) {
+            reachedOps += next
+            queue.enqueue(next)
+          }
+        }
+      }
+      val oversubscribed = reachedOps.toSeq.groupBy(op => OpcodeTranslator.getName(dfg.opNodes(op).opcode))
+        .map(pair => pair._1 -> pair._2.size)
+      CheckResult(matched, numOps, oversubscribed, reachedNodes.size)
+    }
+  }
+}
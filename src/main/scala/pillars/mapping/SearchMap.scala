@@ -2,6 +2,7 @@ package pillars.mapping
 
 import java.io.FileWriter
 import java.util.ArrayList
+import java.util.concurrent.atomic.AtomicBoolean
 
 import pillars.core.{MRRG, MRRGMode, OpcodeTranslator}
 import pillars.hardware.PillarsConfig.USE_RELATIVE_SKEW
@@ -10,12 +11,101 @@ import scala.collection.JavaConverters
 import scala.collection.mutable.ArrayBuffer
 
 object SearchMap {
+  /** The contexts of the last mappings by MRRG, whose distances are reused by later mappings on the same MRRG.
+   */
+  private val contexts = new java.util.WeakHashMap[MRRG, searchContext]()
+
+  /** Map the given DFG to the given MRRG by search, and write result to files related to filename.
+   *
+   * @param threads     the number of workers running shuffled restarts at the same time
+   * @param seed        the seed of the shuffles, worker i uses seed + i, which only is used when threads > 1
+   * @param timeLimit   the time limit of the mapping in milliseconds, 0 for no limit
+   * @param cancelToken a token which stops the search when it is set by the caller, or null
+   * @return 0 when a mapping is found, otherwise -1, and the failure is printed when the time limit is reached
+   */
   def mapping(dfg: DFG, mrrg: MRRG, filename: String = null, fw: FileWriter = null,
               separatedPR: Boolean = false, scheduleControl: Boolean = false,
-              skewLimit: Int = 2, latencyLimit: Int = 32
+              skewLimit: Int = 2, latencyLimit: Int = 32,
+              onMapperCreated: searchMap => Unit = null, useCache: Boolean = false,
+              checkMII: Boolean = true, checkPlacement: Boolean = true,
+              writeMetrics: Boolean = false, threads: Int = 1, seed: Long = 0,
+              timeLimit: Long = 0, cancelToken: AtomicBoolean = null
              ): Double = {
+    val budget = new searchBudget(timeLimit, cancelToken)
     assert(USE_RELATIVE_SKEW, "This mapper works only when USE_RELATIVE_SKEW is true!")
+    if (checkMII && !MII.check(dfg, mrrg)) {
+      return -1
+    }
+    if (checkPlacement) {
+      val placementCheck = PlacementCheck.check(dfg, mrrg)
+      if (!placementCheck.feasible) {
+        println(placementCheck)
+        return -1
+      }
+    }
+
+    lazy val cacheKey = MappingCache.key("search", dfg, mrrg, scheduleControl, skewLimit)
+    if (useCache && MappingCache.load(cacheKey, dfg, mrrg, filename).isDefined) {
+      return 0.0
+    }
+
+    var phase = mappingMetrics.start()
+    val mapper = prepare(dfg, mrrg, filename, scheduleControl, skewLimit)
+    mapper.metrics.stop("marshal", phase)
+    //The lock is only held to read and write the map, contexts of different MRRGs are built concurrently.
+    val sameMRRG = contexts.synchronized(contexts.get(mrrg))
+    mapper.context = new searchContext(mapper, sameMRRG)
+    contexts.synchronized(contexts.put(mrrg, mapper.context))
+    mapper.budget = budget
+    mapper.threads = threads
+    mapper.seed = seed
+    if (onMapperCreated != null) {
+      onMapperCreated(mapper)
+    }
+
+    mapper.get()
+    if (!mapper.findSolution) {
+      if (mapper.timedOut) {
+        println("SearchMap fails: the time limit of " + timeLimit + " ms is reached, the best partial mapping places "
+          + mapper.bestPartialDepth + " of " + dfg.getOpSize() + " opNodes")
+      }
+      recordMetrics(mapper, filename, writeMetrics)
+      return -1
+    }
+    phase = mappingMetrics.start()
+    var skewMap = mapper.DFGRelativeSkewMap
+    dfg.updateSchedule(filename + "_r.txt", mapper.DFGLatencyMap, skewMap, filename + "_r.txt")
+    mapper.metrics.stop("postprocess", phase)
+    recordMetrics(mapper, filename, writeMetrics)
+    if (useCache) {
+      MappingCache.store(cacheKey, dfg, mrrg, filename, "success")
+    }
+    return 0.0
+  }
+
+  /** Give the metrics of a mapper to GlobalMappingResult, and write them when writeMetrics is true.
+   *
+   * @param mapper       the mapper after mapping
+   * @param filename     the name we will used to write result
+   * @param writeMetrics a parameter indicating whether the metrics are written into "filename_metrics.json"
+   *                     and "filename_metrics.csv"
+   */
+  def recordMetrics(mapper: searchMap, filename: String, writeMetrics: Boolean): Unit = {
+    GlobalMappingResult.addMetrics(mapper.metrics.toJson("search"))
+    if (writeMetrics && filename != null) {
+      mapper.metrics.write(filename, "search")
+    }
+  }
 
+  /** Create a searchMap mapper holding the given DFG and MRRG, without running it.
+   *
+   * @param dfg             the given DFG
+   * @param mrrg            the given MRRG
+   * @param filename        the name we will used to write result
+   * @param scheduleControl a parameter indicating whether the skew should be controlled
+   * @param skewLimit       the limit of skew which only is used when scheduleControl is ture
+   */
+  def prepare(dfg: DFG, mrrg: MRRG, filename: String, scheduleControl: Boolean, skewLimit: Int): searchMap = {
     val mapper = new searchMap(dfg.getOpSize(), mrrg.getSize())
     mapper.filename = filename
 
@@ -124,9 +214,6 @@ object SearchMap {
     fixedMapRelation.map(pair => mapper.fixedMapRelation
       .put(pair._1, JavaConverters.setAsJavaSet(pair._2)))
 
-    mapper.get()
-    var skewMap = mapper.DFGRelativeSkewMap
-    dfg.updateSchedule(filename + "_r.txt", mapper.DFGLatencyMap, skewMap, filename + "_r.txt")
-    return 0.0
+    mapper
   }
 }
@@ -0,0 +1,177 @@
+package pillars.mapping;
+
+import gurobi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A wrapper of GRBModel used to set up the Gurobi mapping model in bulk.
+ * <p>
+ * Linear constraints are buffered and added through the array-based {@code addConstrs},
+ * and names of variables and constraints are only generated when they are required in an LP dump.
+ */
+class bulkModel {
+    GRBModel model;
+    boolean named;
+    int flushSize = 10000;
+
+    List<GRBLinExpr> lhsExprs = new ArrayList<>();
+    List<Character> senses = new ArrayList<>();
+    List<Double> rhsValues = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+
+    /**
+     * Constructed function.
+     *
+     * @param model the targeted model
+     * @param named a parameter indicating whether names of variables and constraints should be generated
+     */
+    bulkModel(GRBModel model, boolean named) {
+        this.model = model;
+        this.named = named;
+    }
+
+    /**
+     * Get the name by concatenating all parts, return null if names are not required.
+     *
+     * @param parts parts of the name
+     */
+    String name(Object... parts) {
+        if (!named) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Object part : parts) {
+            builder.append(part);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Set names of variables with one call, only when names are required.
+     *
+     * @param vars  the variables
+     * @param names the names of variables
+     */
+    void setNames(GRBVar[] vars, String[] names) throws GRBException {
+        if (named && vars.length > 0) {
+            model.set(GRB.StringAttr.VarName, vars, names);
+        }
+    }
+
+    /**
+     * Set the name of a variable, only when names are required.
+     *
+     * @param var  the variable
+     * @param name the name of variable
+     */
+    void setName(GRBVar var, String name) throws GRBException {
+        if (named) {
+            var.set(GRB.StringAttr.VarName, name);
+        }
+    }
+
+    GRBVar[] addVars(int count, char type) throws GRBException {
+        return model.addVars(count, type);
+    }
+
+    GRBVar addVar(double lb, double ub, double obj, char type, String name) throws GRBException {
+        return model.addVar(lb, ub, obj, type, name);
+    }
+
+    void addConstr(GRBLinExpr lhs, char sense, double rhs, String name) throws GRBException {
+        lhsExprs.add(lhs);
+        senses.add(sense);
+        rhsValues.add(rhs);
+        names.add(name);
+        if (lhsExprs.size() >= flushSize) {
+            flush();
+        }
+    }
+
+    void addConstr(GRBLinExpr lhs, char sense, GRBLinExpr rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr(lhs);
+        expr.multAdd(-1, rhs);
+        addConstr(expr, sense, 0, name);
+    }
+
+    void addConstr(GRBLinExpr lhs, char sense, GRBVar rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr(lhs);
+        expr.addTerm(-1, rhs);
+        addConstr(expr, sense, 0, name);
+    }
+
+    void addConstr(GRBVar lhs, char sense, GRBLinExpr rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr();
+        expr.addTerm(1, lhs);
+        expr.multAdd(-1, rhs);
+        addConstr(expr, sense, 0, name);
+    }
+
+    void addConstr(GRBVar lhs, char sense, GRBVar rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr();
+        expr.addTerm(1, lhs);
+        expr.addTerm(-1, rhs);
+        addConstr(expr, sense, 0, name);
+    }
+
+    void addConstr(GRBVar lhs, char sense, double rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr();
+        expr.addTerm(1, lhs);
+        addConstr(expr, sense, rhs, name);
+    }
+
+    void addConstr(double lhs, char sense, GRBVar rhs, String name) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr();
+        expr.addTerm(-1, rhs);
+        addConstr(expr, sense, -lhs, name);
+    }
+
+    void addGenConstrAnd(GRBVar resvar, GRBVar[] vars, String name) throws GRBException {
+        model.addGenConstrAnd(resvar, vars, name);
+    }
+
+    void addGenConstrIndicator(GRBVar binvar, int binval, GRBLinExpr expr, char sense, double rhs, String name)
+            throws GRBException {
+        model.addGenConstrIndicator(binvar, binval, expr, sense, rhs, name);
+    }
+
+    void setObjective(GRBLinExpr expr, int sense) throws GRBException {
+        model.setObjective(expr, sense);
+    }
+
+    void setObjectiveN(GRBLinExpr expr, int index, int priority, String name) throws GRBException {
+        model.setObjectiveN(expr, index, priority, 1.0, 0.0, 0.0, name);
+    }
+
+    /**
+     * Add all buffered linear constraints to the model with one call.
+     */
+    void flush() throws GRBException {
+        int size = lhsExprs.size();
+        if (size == 0) {
+            return;
+        }
+        char[] senseArray = new char[size];
+        double[] rhsArray = new double[size];
+        for (int i = 0; i < size; i++) {
+            senseArray[i] = senses.get(i);
+            rhsArray[i] = rhsValues.get(i);
+        }
+        String[] nameArray = named ? names.toArray(new String[size]) : null;
+        model.addConstrs(lhsExprs.toArray(new GRBLinExpr[size]), senseArray, rhsArray, nameArray);
+        lhsExprs.clear();
+        senses.clear();
+        rhsValues.clear();
+        names.clear();
+    }
+
+    /**
+     * Flush buffered constraints and update the model.
+     */
+    void update() throws GRBException {
+        flush();
+        model.update();
+    }
+}
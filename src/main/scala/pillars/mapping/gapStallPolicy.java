@@ -0,0 +1,30 @@
+package pillars.mapping;
+
+/**
+ * Stop when the gap has not changed for some explored nodes.
+ */
+class gapStallPolicy implements stoppingPolicy {
+    double nodes;
+    double lastGap = Double.NaN;
+    double lastChangeNodes = 0;
+
+    gapStallPolicy(double nodes) {
+        this.nodes = nodes;
+    }
+
+    @Override
+    public String check(progressRecord record) {
+        if (!record.hasIncumbent()) {
+            return null;
+        }
+        if (Double.isNaN(lastGap) || Math.abs(record.gap - lastGap) > 1e-9) {
+            lastGap = record.gap;
+            lastChangeNodes = record.nodes;
+            return null;
+        }
+        if (record.nodes - lastChangeNodes >= nodes) {
+            return "gap " + record.gap + " unchanged for " + nodes + " nodes";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package pillars.mapping;
+
+import gurobi.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool keeping one Gurobi environment per mapper thread.
+ * <p>
+ * Call {@code get} to obtain the environment of the current thread with default parameters,
+ * and {@code dispose} to release models as soon as their results are extracted.
+ * The released sizes are accumulated, so that the native memory given back can be reported.
+ */
+class grbEnvPool {
+    static ThreadLocal<GRBEnv> threadEnv = new ThreadLocal<>();
+    static List<GRBEnv> allEnvs = Collections.synchronizedList(new ArrayList<>());
+
+    static AtomicLong createdEnvs = new AtomicLong();
+    static AtomicLong disposedModels = new AtomicLong();
+    static AtomicLong disposedVars = new AtomicLong();
+    static AtomicLong disposedConstrs = new AtomicLong();
+    static AtomicLong disposedNonZeros = new AtomicLong();
+
+    /**
+     * Get the environment of the current thread, its parameters are reset to default values.
+     */
+    static GRBEnv get() throws GRBException {
+        GRBEnv env = threadEnv.get();
+        if (env == null) {
+            env = new GRBEnv();
+            threadEnv.set(env);
+            allEnvs.add(env);
+            createdEnvs.incrementAndGet();
+        } else {
+            env.resetParams();
+        }
+        return env;
+    }
+
+    /**
+     * Dispose models and record their sizes. A model given more than once is only disposed once.
+     *
+     * @param models the models to be disposed, null is ignored
+     */
+    static void dispose(GRBModel... models) {
+        List<GRBModel> disposed = new ArrayList<>();
+        for (GRBModel model : models) {
+            if (model == null || disposed.contains(model)) {
+                continue;
+            }
+            disposed.add(model);
+            try {
+                disposedVars.addAndGet(model.get(GRB.IntAttr.NumVars));
+                disposedConstrs.addAndGet(model.get(GRB.IntAttr.NumConstrs) + model.get(GRB.IntAttr.NumGenConstrs));
+                disposedNonZeros.addAndGet((long) model.get(GRB.DoubleAttr.DNumNZs));
+            } catch (GRBException e) {
+                System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+            model.dispose();
+            disposedModels.incrementAndGet();
+        }
+    }
+
+    /**
+     * Dispose the environment of the current thread.
+     */
+    static void release() throws GRBException {
+        GRBEnv env = threadEnv.get();
+        if (env != null) {
+            threadEnv.remove();
+            allEnvs.remove(env);
+            env.dispose();
+        }
+    }
+
+    /**
+     * Dispose environments of all threads, which should only be called when no mapping is running.
+     */
+    static void releaseAll() throws GRBException {
+        synchronized (allEnvs) {
+            for (GRBEnv env : allEnvs) {
+                env.dispose();
+            }
+            allEnvs.clear();
+        }
+        threadEnv = new ThreadLocal<>();
+    }
+
+    /**
+     * Report environments created and models disposed.
+     * The released native memory is given by the sizes of the disposed models.
+     */
+    static String report() {
+        return "Gurobi environments: " + createdEnvs.get() + ", disposed models: " + disposedModels.get() +
+                " (vars: " + disposedVars.get() + ", constrs: " + disposedConstrs.get() +
+                ", nonzeros: " + disposedNonZeros.get() + ")";
+    }
+}
@@ -5,6 +5,13 @@ import gurobi.*;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.ceil;
@@ -20,6 +27,12 @@ class checkWithoutRing {
     List<Map<Integer, Integer>> potentialDelayUnits;
     Set<Integer> invalidVars = new HashSet<>();
 
+    /** Useless islands found in the failed graphs,
+     * uselessIslandGraphs.get(i) is the index of the graph containing uselessIslands.get(i).
+     */
+    List<Integer> uselessIslandGraphs = new ArrayList<>();
+    List<Set<Integer>> uselessIslands = new ArrayList<>();
+
     /**
      * Constructed function.
      *
@@ -48,6 +61,22 @@ class checkWithoutRing {
         return true;
     }
 
+    /**
+     * check all targeted direction graphs without stopping at the first failure,
+     * so that useless islands of all failed graphs are collected.
+     *
+     * @return if all graphs pass simply connected checking, return true.
+     */
+    Boolean checkAll() {
+        boolean ret = true;
+        for (int i = 0; i < directionGraphs.size(); i++) {
+            if (!checkSimplyConnected(i)) {
+                ret = false;
+            }
+        }
+        return ret;
+    }
+
     /**
      * Connect two nodes (sharing the same root).
      *
@@ -139,11 +168,19 @@ class checkWithoutRing {
                         if(otherRoot != root){
                             Set<Integer> invalidNodes = nodeBelongRoot.get(otherRoot);
                             invalidVars.addAll(invalidNodes);
+                            if(!pass){
+                                uselessIslandGraphs.add(index);
+                                uselessIslands.add(invalidNodes);
+                            }
                         }
                     }
                     return pass;
                 }
             }
+            for(int root : rootSet){
+                uselessIslandGraphs.add(index);
+                uselessIslands.add(nodeBelongRoot.get(root));
+            }
             return false;
         }else{
             return true;
@@ -154,6 +191,78 @@ class checkWithoutRing {
     }
 }
 
+/**
+ * This callback checks every new incumbent of the routing model with {@code checkWithoutRing},
+ * and adds lazy cuts forbidding the useless islands of routingNodes it finds.
+ */
+class ringCutCallback extends progressCallback {
+    Integer[] afterPlacementF;
+    GRBVar[] R;
+    GRBVar[] S;
+    GRBVar[] Delays;
+    GRBVar[] cutF;
+
+    /**
+     * Constructed function.
+     *
+     * @param _mapper          the mapper owning the routing model
+     * @param _label           the label of the routing model in progress records
+     * @param _afterPlacementF the placement result when placement and routing are separated, otherwise null
+     * @param _R               the variables R of the routing model
+     * @param _S               the variables S of the routing model
+     * @param _Delays          the variables Delay of the routing model
+     * @param _cutF            the placement variables of the routing model used in cuts, or null when
+     *                         the placement result is used as constants
+     */
+    ringCutCallback(gurobiMapJava _mapper, String _label, Integer[] _afterPlacementF,
+                    GRBVar[] _R, GRBVar[] _S, GRBVar[] _Delays, GRBVar[] _cutF) {
+        super(_mapper, _label);
+        afterPlacementF = _afterPlacementF;
+        R = _R;
+        S = _S;
+        Delays = _Delays;
+        cutF = _cutF;
+    }
+
+    double[] getValues(GRBVar[] vars) throws GRBException {
+        if (vars == null || vars.length == 0) {
+            return new double[0];
+        }
+        return getSolution(vars);
+    }
+
+    /**
+     * The ring check runs before the solution is reported,
+     * so a solution cut off by ring cuts is not counted as an incumbent by progressCallback.
+     */
+    @Override
+    protected void callback() {
+        if (where != GRB.CB_MIPSOL) {
+            super.callback();
+            return;
+        }
+        try {
+            flushPresolve();
+            double[] solR = getValues(R);
+            double[] solS = getValues(S);
+            double[] solDelays = getValues(Delays);
+            double[] solF = afterPlacementF == null ? getValues(cutF) : null;
+            List<GRBLinExpr> cuts;
+            synchronized (mapper) {
+                mapper.setRoutingSolution(solR, solS, solDelays, solF, afterPlacementF);
+                cuts = mapper.getRingCuts(afterPlacementF, R, S, cutF);
+                for (GRBLinExpr cut : cuts) {
+                    addLazy(cut, GRB.LESS_EQUAL, 0);
+                }
+                mapper.lazyRingCutCount += cuts.size();
+            }
+            reportSolution(cuts.isEmpty());
+        } catch (GRBException e) {
+            System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+        }
+    }
+}
+
 /**
  * A class doing core mapping process using Gurobi
  * <p>
@@ -227,9 +336,152 @@ public class gurobiMapJava {
     long startTime = 0;
     long timeLimit = 3600000;
     int neighboringDistance = 20;
+    int unreachableDistance = 9999999;
     int usedBypassALU = 0;
     int usedFuncALU = 0;
 
+    /** A parameter indicating whether useless rings are forbidden by lazy cuts during the routing solve,
+     * which only is used when scheduleControl is true.
+     */
+    Boolean lazyRingCut = true;
+    int lazyRingCutCount = 0;
+
+    /** The (valNode, fanout) pair of each graph tested in the latest ring check.
+     */
+    List<int[]> testedGraphKeys;
+
+    /** A parameter indicating whether an infeasible routing model feeds a feasibility cut back into
+     * the persistent placement model, which only is used when separatedPR is true.
+     */
+    Boolean bendersCut = true;
+    int feasibilityCutCount = 0;
+    GRBVar[] varFR;
+
+    /** Number of copies of the routing model solved concurrently with different Seed and MIPFocus,
+     * and the total number of threads split between them. No portfolio is used when portfolioSize is 1.
+     */
+    int portfolioSize = 1;
+    int portfolioThreads = Runtime.getRuntime().availableProcessors();
+    /** The environments owned by portfolio copies, a copy is solved in its own environment
+     * because models of one environment can not be optimized concurrently.
+     */
+    Map<GRBModel, GRBEnv> copyEnvs = Collections.synchronizedMap(new HashMap<>());
+
+    /** A flag set by {@code cancel} from another thread, and the models which may be under optimization.
+     */
+    volatile boolean cancelled = false;
+    Set<GRBModel> activeModels = Collections.synchronizedSet(new HashSet<>());
+
+    /** A prior mapping used as the MIP start, given by names of nodes.
+     * startPlacement maps an opNode to a function node. startRouting maps a valNode to the routing nodes
+     * used by each of its fan-outs, or to one set of all used routing nodes when fan-outs are unknown.
+     * startLatency maps an opNode to its latency, which is only given as a hint.
+     * When useVarHints is true, placement and routing are also given as hints instead of the MIP start.
+     */
+    Map<String, String> startPlacement = new HashMap<>();
+    Map<String, List<Set<String>>> startRouting = new HashMap<>();
+    Map<String, Integer> startLatency = new HashMap<>();
+    Boolean useVarHints = false;
+
+    /** A parameter indicating whether placements symmetric under interchangeable PEs are excluded.
+     * symmetricPEs holds the groups of interchangeable PEs, each PE is given by its aligned function nodes.
+     * Symmetry breaking is skipped when startPlacement is given, as the start may not be the placement
+     * kept by the constraints and would be rejected as infeasible.
+     */
+    Boolean symmetryBreaking = true;
+    List<List<List<Integer>>> symmetricPEs;
+    int symmetryBreakingCount = 0;
+
+    /** The latency objective of the routing model, which only is used when scheduleControl is true.
+     * "max" minimizes the maximal latency of opNodes, "sum" minimizes the sum of latencies of sink opNodes,
+     * and "none" only minimizes routing resources.
+     * With hierarchicalObjective, the latency objective is optimized first, then the number of routing nodes,
+     * then the number of ALUs used as bypass. Otherwise they are summed with latencyWeight and bypassWeight.
+     */
+    String latencyObjective = "none";
+    Boolean hierarchicalObjective = true;
+    double latencyWeight = 10.0;
+    double bypassWeight = 1.0;
+
+    /** A parameter indicating whether all solutions in the pool of the routing model are checked and ranked,
+     * instead of reading the last reported solution. poolSize is the size of the pool (PoolSolutions),
+     * and the solution limit is raised to it.
+     */
+    Boolean harvestPool = false;
+    int poolSize = 10;
+
+    /** Progress of solves is given to reportProgress by progressCallback, and written into
+     * "filename_progress.jsonl" when progressLog is true. stoppingPolicies create the policies of each solve.
+     * lastProgress and stopReason are the latest record and the reason of an early stop.
+     */
+    List<Supplier<stoppingPolicy>> stoppingPolicies = new ArrayList<>();
+    Boolean progressLog = false;
+    double progressInterval = 1.0;
+    String lastProgress = "";
+    String stopReason = "";
+
+    /** Timing of the phases and sizes of the models in this mapping.
+     * Phases are "index", "build", "presolve", "solve_placement", "solve_routing", "ring_check", "extract"
+     * and "output", where "ring_check" may be nested in "solve_routing" with lazy ring cuts.
+     * The presolve time of the routing model is only given when a callback is installed,
+     * so collectMetrics installs progressCallback.
+     * The wall time from the start of ILPMap to the first and the best incumbent are counted as
+     * "first_incumbent_ms" and "best_incumbent_ms" when progress is tracked.
+     */
+    mappingMetrics metrics = new mappingMetrics();
+    Boolean collectMetrics = false;
+    double bestIncumbent = GRB.INFINITY;
+
+    /** Sparse variable layout of the ILP model.
+     * RIndexTable/FIndexTable map a (valNode, routingNode)/(opNode, functionNode) pair
+     * to its position in GRBVar[] R/F, or -1 when no variable is created for the pair.
+     */
+    int[] RIndexTable;
+    int[] FIndexTable;
+    List<List<Integer>> valReachableRouting;
+    List<List<Integer>> routingLegalVals;
+    List<List<Integer>> opLegalFunction;
+    List<List<Integer>> functionLegalOps;
+
+    /** Int-indexed DFG edges (source opNode -> sink opNode) and the distance matrix between functionalNodes,
+     * which are used to build the placement objective. Unreachable pairs are at unreachableDistance,
+     * and maxFunctionDistance is the largest distance of reachable pairs.
+     */
+    int[] edgeSource;
+    int[] edgeSink;
+    int[][] functionDistance;
+    int maxFunctionDistance;
+    int[] functionNeighborCount;
+    Boolean compactPlacementObjective = false;
+
+    /** Variables of the latest model, which are used to read back the solution by index.
+     * S_i_j_k of R_i_j is stored in varS from SOffset[RIndex(j, i)].
+     */
+    GRBVar[] varR;
+    GRBVar[] varF;
+    GRBVar[] varS;
+    int[] SOffset;
+    GRBVar[] varDelays;
+    GRBVar[] varLatencies;
+    GRBVar[] varWaitSkews;
+    GRBVar[] varRelativeSkews;
+    Map<String, Integer> relativeSkewIndex;
+
+    /** Values of the variables above in the latest solution.
+     */
+    double[] solR;
+    double[] solF;
+    double[] solS;
+    double[] solDelays;
+    double[] solLatencies;
+    double[] solWaitSkews;
+    double[] solRelativeSkews;
+
+    /** A parameter indicating whether the models are written into LP files.
+     * Names of variables and constraints are only generated when it is true.
+     */
+    Boolean dumpLP = true;
+
     /**
      * Set up the class.
      *
@@ -398,9 +650,10 @@ public class gurobiMapJava {
      *
      * @param valIndex     the index of valNode
      * @param routingIndex the index of routingNode
+     * @return the index in R, or -1 if the routingNode cannot carry the valNode
      */
     int RIndex(int valIndex, int routingIndex) {
-        return valIndex * MRRGRoutingName.size() + routingIndex;
+        return RIndexTable[valIndex * MRRGRoutingName.size() + routingIndex];
     }
 
     /**
@@ -408,18 +661,321 @@ public class gurobiMapJava {
      *
      * @param opIndex       the index of opNode
      * @param functionIndex the index of functionalNode
+     * @return the index in F, or -1 if the functionalNode cannot execute the opNode
      */
     int FIndex(int opIndex, int functionIndex) {
-        return opIndex * MRRGFunctionName.size() + functionIndex;
+        return FIndexTable[opIndex * MRRGFunctionName.size() + functionIndex];
+    }
+
+    /**
+     * Check whether an opNode can be placed on a functionalNode,
+     * according to the supported opcodes and the fixed SRAM bindings.
+     *
+     * @param op the index of opNode
+     * @param f  the index of functionalNode
+     */
+    boolean isLegalPlacement(int op, int f) {
+        if (!MRRGFunctionSupportOpcode.get(f).contains(DFGOpNodeOpcode.get(op))) {
+            return false;
+        }
+        if (fixedMapRelation.containsKey(op)) {
+            return fixedMapRelation.get(op).contains(f);
+        }
+        return true;
+    }
+
+    /**
+     * Get the latency of the register in a routingNode, 0 if it is not a register.
+     */
+    int routingLatch(int r) {
+        Integer latch = MRRGLatency.get(MRRGRoutingName.get(r));
+        return latch == null ? 0 : latch;
+    }
+
+    /**
+     * Get the latency of the register in a functionalNode, 0 if it is not a register.
+     */
+    int functionLatch(int f) {
+        Integer latch = MRRGLatency.get(MRRGFunctionName.get(f));
+        return latch == null ? 0 : latch;
+    }
+
+    /**
+     * Get the minimum latency from any legal producer functionalNode of a valNode to each routingNode.
+     *
+     * @param val the index of valNode
+     * @return the minimum latency of each routingNode, -1 if the routingNode is unreachable
+     */
+    int[] getForwardLatency(int val) {
+        int[] latency = new int[numMrrgR];
+        Arrays.fill(latency, -1);
+        Deque<Integer> deque = new ArrayDeque<>();
+        int producer = DFGValB2opMap.get(DFGValNodeName.get(val));
+        for (int f : opLegalFunction.get(producer)) {
+            List<Integer> fanOuts = MRRGFunctionFanout.get(f);
+            for (int i = 0; i < fanOuts.size(); i++) {
+                if (MRRGFunctionFanoutType.get(f).get(i) != 0) continue;
+                int r = fanOuts.get(i);
+                int latch = functionLatch(f);
+                if (latency[r] == -1 || latency[r] > latch) {
+                    latency[r] = latch;
+                    if (latch == 0) {
+                        deque.addFirst(r);
+                    } else {
+                        deque.addLast(r);
+                    }
+                }
+            }
+        }
+        //0-1 BFS, since the latency of each routingNode is 0 or 1.
+        while (!deque.isEmpty()) {
+            int r = deque.poll();
+            int next = latency[r] + routingLatch(r);
+            List<Integer> fanOuts = MRRGRoutingFanout.get(r);
+            for (int i = 0; i < fanOuts.size(); i++) {
+                if (MRRGRoutingFanoutType.get(r).get(i) != 0) continue;
+                int out = fanOuts.get(i);
+                if (latency[out] == -1 || latency[out] > next) {
+                    latency[out] = next;
+                    if (next == latency[r]) {
+                        deque.addFirst(out);
+                    } else {
+                        deque.addLast(out);
+                    }
+                }
+            }
+        }
+        return latency;
+    }
+
+    /**
+     * Get routingNodes from which any legal sink functionalNode of a valNode can be reached.
+     *
+     * @param val the index of valNode
+     */
+    boolean[] getBackwardReachable(int val) {
+        boolean[] reachable = new boolean[numMrrgR];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < DFGValNodeOut.get(val).size(); i++) {
+            int op = DFGValNodeOut.get(val).get(i);
+            int operand = DFGValNodeOutputOperand.get(val).get(i);
+            for (int f : opLegalFunction.get(op)) {
+                List<Integer> fanIns = MRRGFunctionFanin.get(f);
+                if (fanIns.size() <= operand) continue;
+                for (int j = 0; j < fanIns.size(); j++) {
+                    if (MRRGFunctionFaninType.get(f).get(j) != 0) continue;
+                    if (!DFGCommutativeSet.contains(op) && j != operand) continue;
+                    int r = fanIns.get(j);
+                    if (!reachable[r]) {
+                        reachable[r] = true;
+                        queue.add(r);
+                    }
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            int r = queue.poll();
+            List<Integer> fanIns = MRRGRoutingFanin.get(r);
+            for (int i = 0; i < fanIns.size(); i++) {
+                if (MRRGRoutingFaninType.get(r).get(i) != 0) continue;
+                int in = fanIns.get(i);
+                if (!reachable[in]) {
+                    reachable[in] = true;
+                    queue.add(in);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Build the sparse variable layout.
+     * F_p,q is only created when opNode q can be placed on functionalNode p.
+     * R_i,j is only created when routingNode i can be reached from a legal producer of valNode j
+     * and can reach a legal consumer of valNode j.
+     * When scheduleControl is true, routingNodes beyond maxLatency are also pruned.
+     *
+     * @param scheduleControl a parameter indicating whether the latency and skew should be controlled and obtained in ILP
+     */
+    void buildSparseIndex(Boolean scheduleControl) {
+        FIndexTable = new int[numDfgOps * numMrrgF];
+        Arrays.fill(FIndexTable, -1);
+        opLegalFunction = new ArrayList<>();
+        functionLegalOps = new ArrayList<>();
+        for (int f = 0; f < numMrrgF; f++) {
+            functionLegalOps.add(new ArrayList<>());
+        }
+        countF = 0;
+        for (int op = 0; op < numDfgOps; op++) {
+            List<Integer> legalFunction = new ArrayList<>();
+            for (int f = 0; f < numMrrgF; f++) {
+                if (isLegalPlacement(op, f)) {
+                    FIndexTable[op * numMrrgF + f] = countF++;
+                    legalFunction.add(f);
+                    functionLegalOps.get(f).add(op);
+                }
+            }
+            opLegalFunction.add(legalFunction);
+        }
+
+        RIndexTable = new int[numDfgVals * numMrrgR];
+        Arrays.fill(RIndexTable, -1);
+        valReachableRouting = new ArrayList<>();
+        routingLegalVals = new ArrayList<>();
+        for (int r = 0; r < numMrrgR; r++) {
+            routingLegalVals.add(new ArrayList<>());
+        }
+        countR = 0;
+        for (int val = 0; val < numDfgVals; val++) {
+            int[] forwardLatency = getForwardLatency(val);
+            boolean[] backwardReachable = getBackwardReachable(val);
+            List<Integer> reachableRouting = new ArrayList<>();
+            for (int r = 0; r < numMrrgR; r++) {
+                if (forwardLatency[r] == -1 || !backwardReachable[r]) continue;
+                if (scheduleControl && forwardLatency[r] > maxLatency) continue;
+                RIndexTable[val * numMrrgR + r] = countR++;
+                reachableRouting.add(r);
+                routingLegalVals.get(r).add(val);
+            }
+            valReachableRouting.add(reachableRouting);
+        }
+        metrics.set("sparse_vars_R", countR);
+        metrics.set("dense_vars_R", (long) numDfgVals * numMrrgR);
+        metrics.set("sparse_vars_F", countF);
+        metrics.set("dense_vars_F", (long) numDfgOps * numMrrgF);
+    }
+
+    /**
+     * Get values of variables in the current solution with one call.
+     */
+    double[] getX(GRBModel model, GRBVar[] vars) throws GRBException {
+        if (vars == null || vars.length == 0) {
+            return new double[0];
+        }
+        return model.get(GRB.DoubleAttr.X, vars);
+    }
+
+    /**
+     * Read back the current solution of the models by index.
+     */
+    void readSolution(GRBModel modelP, GRBModel modelR) throws GRBException {
+        solR = getX(modelR, varR);
+        solF = getX(modelP, varF);
+        solS = getX(modelR, varS);
+        solDelays = getX(modelR, varDelays);
+        solLatencies = getX(modelR, varLatencies);
+        solWaitSkews = getX(modelR, varWaitSkews);
+        solRelativeSkews = getX(modelR, varRelativeSkews);
+    }
+
+    /**
+     * Get values of variables in the solution selected by SolutionNumber with one call.
+     */
+    double[] getXn(GRBModel model, GRBVar[] vars) throws GRBException {
+        if (vars == null || vars.length == 0) {
+            return new double[0];
+        }
+        return model.get(GRB.DoubleAttr.Xn, vars);
+    }
+
+    /**
+     * Score a routing solution by the maximal latency of opNodes, the number of used registers
+     * and the number of ALUs used as bypass. A smaller score in lexicographic order is better.
+     */
+    long[] scoreSolution(double[] solR, double[] solLatencies) {
+        long latency = 0;
+        for (double value : solLatencies) {
+            latency = Math.max(latency, Math.round(value));
+        }
+        long registers = 0;
+        long bypass = 0;
+        for (int val = 0; val < numDfgVals; val++)
+            for (int r : valReachableRouting.get(val))
+                if (abs(solR[RIndex(val, r)] - 1.0) < 0.01) {
+                    String name = MRRGRoutingName.get(r);
+                    if (MRRGLatency.getOrDefault(name, 0) > 0) {
+                        registers++;
+                    }
+                    if (name.contains("alu") && name.contains("internalNode")) {
+                        bypass++;
+                    }
+                }
+        return new long[]{latency, registers, bypass};
+    }
+
+    static boolean lexicographicLess(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] < b[i];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read back the best solution in the pool of the routing model.
+     * Each solution is checked with the ring check when scheduleControl is true, and scored by scoreSolution.
+     * The solution reported by Gurobi is read when no solution in the pool passes the ring check.
+     *
+     * @return the index of the chosen solution in the pool
+     */
+    int readPoolSolution(GRBModel modelP, GRBModel modelR, Boolean scheduleControl) throws GRBException {
+        int count = modelR.get(GRB.IntAttr.SolCount);
+        double[] placementF = modelP == modelR ? null : getX(modelP, varF);
+        int best = -1;
+        long[] bestScore = null;
+        for (int i = 0; i < count; i++) {
+            modelR.set(GRB.IntParam.SolutionNumber, i);
+            double[] poolR = getXn(modelR, varR);
+            if (scheduleControl) {
+                setRoutingSolution(poolR, getXn(modelR, varS), getXn(modelR, varDelays),
+                        placementF == null ? getXn(modelR, varF) : placementF, null);
+                if (!checkRoutingWithoutUselessRing()) {
+                    System.out.println("Pool solution " + i + " fails the ring check.");
+                    continue;
+                }
+            }
+            long[] score = scoreSolution(poolR, getXn(modelR, varLatencies));
+            System.out.println("Pool solution " + i + ": latency " + score[0] + ", registers " + score[1] +
+                    ", bypass ALUs " + score[2]);
+            if (bestScore == null || lexicographicLess(score, bestScore)) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        if (best == -1) {
+            readSolution(modelP, modelR);
+            //invalidVars and ringCheckPass were left by the last pool solution.
+            if (scheduleControl) {
+                setRoutingSolution(solR, solS, solDelays, solF, null);
+                ringCheckPass = checkRoutingWithoutUselessRing();
+            }
+            return 0;
+        }
+
+        modelR.set(GRB.IntParam.SolutionNumber, best);
+        solR = getXn(modelR, varR);
+        solF = placementF == null ? getXn(modelR, varF) : placementF;
+        solS = getXn(modelR, varS);
+        solDelays = getXn(modelR, varDelays);
+        solLatencies = getXn(modelR, varLatencies);
+        solWaitSkews = getXn(modelR, varWaitSkews);
+        solRelativeSkews = getXn(modelR, varRelativeSkews);
+        if (scheduleControl) {
+            setRoutingSolution(solR, solS, solDelays, solF, null);
+            ringCheckPass = checkRoutingWithoutUselessRing();
+        }
+        System.out.println("Pool solution " + best + " of " + count + " is chosen.");
+        return best;
     }
 
     /**
      * Initialize mappedOp2MrrgMap.
      */
-    void initOp2MrrgMap(GRBVar[] F) throws GRBException {
+    void initOp2MrrgMap() {
         for (int op = 0; op < numDfgOps; op++)
-            for (int f = 0; f < numMrrgF; f++) {
-                if (abs(F[FIndex(op, f)].get(GRB.DoubleAttr.X) - 1.0) < 0.01) {
+            for (int f : opLegalFunction.get(op)) {
+                if (abs(solF[FIndex(op, f)] - 1.0) < 0.01) {
                     mappedOp2MrrgMap.put(op, f);
                 }
             }
@@ -436,33 +992,41 @@ public class gurobiMapJava {
         GRBModel[] models = getILPModel(separatedPR, scheduleControl);
         GRBModel modelP = models[0];
         GRBModel modelR = models[1];
+        metrics.set("iterations", iterationNum);
+        metrics.set("ring_checks", ringCheckCount);
+        metrics.set("lazy_ring_cuts", lazyRingCutCount);
+        metrics.set("feasibility_cuts", feasibilityCutCount);
+        metrics.set("symmetry_breaking_constrs", symmetryBreakingCount);
         result = "fail\t\t" + iterationNum + "\t\t" + ringCheckCount;
 
+        /** Read back everything needed from the models, and dispose them.
+         */
+        int solcntP = 0;
+        int solcntR = 0;
+        try {
 //        int statusP = modelP.get(GRB.IntAttr.Status);
-        int solcntP = modelP.get(GRB.IntAttr.SolCount);
+            solcntP = modelP.get(GRB.IntAttr.SolCount);
+//        int status = modelR.get(GRB.IntAttr.Status);
+            if (solcntP != 0) {
+                solcntR = modelR.get(GRB.IntAttr.SolCount);
+            }
+            long phase = mappingMetrics.start();
+            if (solcntR > 1 && harvestPool) {
+                readPoolSolution(modelP, modelR, scheduleControl);
+            } else if (solcntR != 0) {
+                readSolution(modelP, modelR);
+            }
+            metrics.stop("extract", phase);
+            metrics.set("solutions_placement", solcntP);
+            metrics.set("solutions_routing", solcntR);
+        } finally {
+            disposeModels(modelP, modelR);
+            System.out.println(grbEnvPool.report());
+        }
         if (solcntP == 0) {
             return null;
         }
 
-        GRBVar[] Vars = modelR.getVars();
-        GRBVar[] R = new GRBVar[countR];
-        System.arraycopy(Vars, 0, R, 0, countR);
-        GRBVar[] F = new GRBVar[countF];
-        int delayOffset = countR + countF;
-        if (separatedPR) {
-            System.arraycopy(modelP.getVars(), 0, F, 0, countF);
-            delayOffset = countR;
-        } else {
-            System.arraycopy(Vars, countR, F, 0, countF);
-        }
-        GRBVar[] Delay = new GRBVar[connectSize];
-        if (scheduleControl) {
-            System.arraycopy(Vars, delayOffset, Delay, 0, connectSize);
-        }
-
-//        int status = modelR.get(GRB.IntAttr.Status);
-        int solcntR = modelR.get(GRB.IntAttr.SolCount);
-
 
 //        if (status == GRB.OPTIMAL || status == GRB.SUBOPTIMAL || status == GRB.SOLUTION_LIMIT) {
         if (solcntR != 0) {
@@ -484,45 +1048,25 @@ public class gurobiMapJava {
                 f_result[f] = -1;
             }
 
-            if (scheduleControl) {
-                for (int i = 0; i < numDfgOps; i++) {
-                    DFGLatencyMap.put(DFGOpNodeName.get(i),
-                            (int) ceil(modelR.getVarByName("Latency_" + i).get(GRB.DoubleAttr.X)));
-                }
-                if (useRelativeSkew) {
-                    for (String key : DFGMultipleInputMap.keySet()) {
-                        DFGRelativeSkewMap.put(key,
-                                (int) ceil(modelR.getVarByName("Skew_" + key).get(GRB.DoubleAttr.X)));
-                    }
-                }
-                for (String key : waitSkewMap.keySet()) {
-                    waitSkewMap.replace(key, (int) ceil(modelR.getVarByName(key).get(GRB.DoubleAttr.X)));
-                }
-
-            }
-
             /****Debug****/
             if (scheduleControl) {
                 for (int i = 0; i < connectSize; i++) {
                     System.out.println("Delay " + connectList.get(i).get(0) + " -> " +
-                            connectList.get(i).get(1) + ": " + modelR.getVarByName("Delay_" + i).get(GRB.DoubleAttr.X));
+                            connectList.get(i).get(1) + ": " + solDelays[i]);
                 }
 
                 for (int i = 0; i < numDfgOps; i++) {
-                    System.out.println("Latency " + DFGOpNodeName.get(i) + ": " +
-                            modelR.getVarByName("Latency_" + i).get(GRB.DoubleAttr.X));
+                    System.out.println("Latency " + DFGOpNodeName.get(i) + ": " + solLatencies[i]);
                 }
 
                 if (useRelativeSkew) {
                     for (String key : DFGMultipleInputMap.keySet()) {
-                        System.out.println("Skew " + key + ": " +
-                                modelR.getVarByName("Skew_" + key).get(GRB.DoubleAttr.X));
+                        System.out.println("Skew " + key + ": " + solRelativeSkews[relativeSkewIndex.get(key)]);
                     }
                 }
 
                 for (String key : waitSkewMap.keySet()) {
-                    System.out.println("waitSkew " + key + ": " +
-                            modelR.getVarByName(key).get(GRB.DoubleAttr.X));
+                    System.out.println("waitSkew " + key + ": " + solWaitSkews[waitSkewMap.get(key)]);
                 }
 
 
@@ -543,10 +1087,24 @@ public class gurobiMapJava {
 //            }
             /****Debug****/
 
+            if (scheduleControl) {
+                for (int i = 0; i < numDfgOps; i++) {
+                    DFGLatencyMap.put(DFGOpNodeName.get(i), (int) ceil(solLatencies[i]));
+                }
+                if (useRelativeSkew) {
+                    for (String key : DFGMultipleInputMap.keySet()) {
+                        DFGRelativeSkewMap.put(key, (int) ceil(solRelativeSkews[relativeSkewIndex.get(key)]));
+                    }
+                }
+                for (String key : waitSkewMap.keySet()) {
+                    waitSkewMap.replace(key, (int) ceil(solWaitSkews[waitSkewMap.get(key)]));
+                }
+
+            }
 
             for (int val = 0; val < numDfgVals; val++) {
-                for (int r = 0; r < numMrrgR; r++)
-                    if (abs(R[RIndex(val, r)].get(GRB.DoubleAttr.X) - 1.0) < 0.01) {
+                for (int r : valReachableRouting.get(val))
+                    if (abs(solR[RIndex(val, r)] - 1.0) < 0.01) {
                         if(invalidVars.contains(r)){
                             System.out.println("Routing node " + MRRGRoutingName.get(r) +
                                     " for value " + DFGValNodeName.get(val) + " has been optimized.");
@@ -555,7 +1113,7 @@ public class gurobiMapJava {
                         String name = MRRGRoutingName.get(r);
                         if (name.contains("alu") && name.contains("internalNode")) {
                             System.out.println("Routing ALU: " + MRRGRoutingName.get(r) + " " + DFGValNodeName.get(val)
-                                    + " " + R[RIndex(val, r)].get(GRB.DoubleAttr.X));
+                                    + " " + solR[RIndex(val, r)]);
                             usedBypassALU += 1;
                         }
                         r_mapped[r] = 1;
@@ -567,23 +1125,25 @@ public class gurobiMapJava {
                 SimpleDateFormat format = new SimpleDateFormat("yyyyMMddhhmmss");
                 filename = "internalNodeinfo" + format.format(now);
             }
+            long outputPhase = mappingMetrics.start();
             FileWriter resultFile = new FileWriter(filename + "_r.txt");
 
             for (int op = 0; op < numDfgOps; op++)
-                for (int f = 0; f < numMrrgF; f++) {
-                    if (abs(F[FIndex(op, f)].get(GRB.DoubleAttr.X) - 1.0) < 0.01) {
+                for (int f : opLegalFunction.get(op)) {
+                    if (abs(solF[FIndex(op, f)] - 1.0) < 0.01) {
                         String name = MRRGFunctionName.get(f);
                         String opName = DFGOpNodeName.get(op);
                         if (DFGMultipleInputMap.containsKey(opName)) {
                             int routingNodeOperand0 = MRRGFunctionFanin.get(f).get(0);
                             int valNodeOperand1 = DFGOpOperand.get(op).get(1);
-                            if (abs(1.0 - modelR.getVarByName("R_" + routingNodeOperand0 + "_" + valNodeOperand1).get(GRB.DoubleAttr.X)) < 0.01) {
+                            int operand0Index = RIndex(valNodeOperand1, routingNodeOperand0);
+                            if (operand0Index != -1 && abs(1.0 - solR[operand0Index]) < 0.01) {
                                 DFGCommutatedSet.add(opName);
                             }
                         }
 
                         if (name.contains("alu") && name.contains("internalNode")) {
-                            System.out.println("Func ALU: " + MRRGFunctionName.get(f) + " " + F[FIndex(op, f)].get(GRB.DoubleAttr.X));
+                            System.out.println("Func ALU: " + MRRGFunctionName.get(f) + " " + solF[FIndex(op, f)]);
                             usedFuncALU += 1;
                         }
                         System.out.printf("%s->%s\n", DFGOpNodeName.get(op), MRRGFunctionName.get(f));
@@ -633,12 +1193,13 @@ public class gurobiMapJava {
             }
             infoFile.flush();
             infoFile.close();
+            metrics.stop("output", outputPhase);
 
             if (ringCheckPass) {
                 int regCount = 0;
                 for (int val = 0; val < numDfgVals; val++) {
                     for (int fanout = 0; fanout < DFGValNodeOut.get(val).size(); fanout++) {
-                        Map<Integer, List<Integer>> graph = getGraph(modelR, val, fanout);
+                        Map<Integer, List<Integer>> graph = getGraph(val, fanout);
                         int op = DFGValB2opMap.get(DFGValNodeName.get(val));
 //                    System.out.println(val + " " + DFGValNodeName.get(val) + " " + op + " " + DFGOpNodeName.get(op));
                         int mappedMrrgNode = mappedOp2MrrgMap.get(op);
@@ -734,30 +1295,35 @@ public class gurobiMapJava {
     Double ILPMap(FileWriter fw) throws GRBException, IOException {
         GRBModel model = getILPModel(false, false)[0];
 
-        int status = model.get(GRB.IntAttr.Status);
+        try {
+            int status = model.get(GRB.IntAttr.Status);
 
-        if (status == GRB.OPTIMAL || status == GRB.SUBOPTIMAL || status == GRB.SOLUTION_LIMIT) {
-            int vars = model.get(GRB.IntAttr.NumVars), constrs = model.get(GRB.IntAttr.NumConstrs);
-            fw.write("Vars : " + vars + " Constrs : " + constrs + " ");
-            return model.get(GRB.DoubleAttr.Runtime);
+            if (status == GRB.OPTIMAL || status == GRB.SUBOPTIMAL || status == GRB.SOLUTION_LIMIT) {
+                int vars = model.get(GRB.IntAttr.NumVars), constrs = model.get(GRB.IntAttr.NumConstrs);
+                fw.write("Vars : " + vars + " Constrs : " + constrs + " ");
+                return model.get(GRB.DoubleAttr.Runtime);
+            }
+            return -1.0;
+        } finally {
+            disposeModels(model);
         }
-        return -1.0;
 
     }
 
     /**
      * Get the mapping result of a valNode as a directed graph.
      */
-    Map<Integer, List<Integer>> getGraph(GRBModel model, Integer val, Integer fanout) throws GRBException {
+    Map<Integer, List<Integer>> getGraph(Integer val, Integer fanout) {
         Set<Integer> mappedRoutingNodes = new HashSet<>();
         int fanouts = DFGValNodeOut.get(val).size();
 //        System.out.println(DFGValNodeName.get(val) + " " + DFGOpNodeName.get(DFGValNodeOut.get(val).get(fanout)));
-        for (int r = 0; r < numMrrgR; r++) {
-            String valueName = "R_" + r + "_" + val;
+        for (int r : valReachableRouting.get(val)) {
+            int index = RIndex(val, r);
+            double value = solR[index];
             if (fanouts > 1) {
-                valueName = "R_" + r + "_" + val + "_" + fanout;
+                value = solS[SOffset[index] + fanout];
             }
-            if (abs(model.getVarByName(valueName).get(GRB.DoubleAttr.X) - 1.0) < 0.01) {
+            if (abs(value - 1.0) < 0.01) {
 //                System.out.println(r + " " + MRRGRoutingName.get(r));
                 mappedRoutingNodes.add(r);
             }
@@ -782,16 +1348,31 @@ public class gurobiMapJava {
     /**
      * Check whether the mapping results contain useless rings.
      */
-    Boolean checkRoutingWithoutUselessRing(GRBModel model) throws GRBException {
+    Boolean checkRoutingWithoutUselessRing() {
+        long phase = mappingMetrics.start();
+        checkWithoutRing check = buildRingCheck();
+        boolean ret = check.check();
+        invalidVars = check.invalidVars;
+        metrics.stop("ring_check", phase);
+        return ret;
+    }
+
+    /**
+     * Build the disjoint set check of the mapping results,
+     * the (valNode, fanout) pair of each tested graph is recorded in testedGraphKeys.
+     */
+    checkWithoutRing buildRingCheck() {
         List<Map<Integer, List<Integer>>> testedGraphs = new ArrayList<>();
         List<List<Integer>> rootCandidates = new ArrayList<>();
         List<Integer> expectedRoutingDelay = new ArrayList<>();
         List<Map<Integer, Integer>> potentialDelayUnits = new ArrayList<>();
+        testedGraphKeys = new ArrayList<>();
         for (int val = 0; val < numDfgVals; val++) {
             int fanouts = DFGValNodeOut.get(val).size();
             for (int fanout = 0; fanout < fanouts; fanout++) {
-                Map<Integer, List<Integer>> graph = getGraph(model, val, fanout);
+                Map<Integer, List<Integer>> graph = getGraph(val, fanout);
                 testedGraphs.add(graph);
+                testedGraphKeys.add(new int[]{val, fanout});
 //                System.out.println(val +", " + fanout + " =================");
                 Map<Integer, Integer> delayUnits = new HashMap<>();
                 for (int i : graph.keySet()) {
@@ -812,7 +1393,7 @@ public class gurobiMapJava {
                 if (MRRGLatency.containsKey(mappedMrrgNodeName)) {
                     opDelay = MRRGLatency.get(mappedMrrgNodeName);
                 }
-                double delay = model.getVarByName("Delay_" + val).get(GRB.DoubleAttr.X);
+                double delay = solDelays[val];
 //                System.out.println(val +", " + fanout + "delay: " +delay);
                 expectedRoutingDelay.add((int)Math.round(delay) - opDelay);
 
@@ -830,33 +1411,122 @@ public class gurobiMapJava {
                 }
             }
         }
-        checkWithoutRing check = new checkWithoutRing(testedGraphs, rootCandidates, expectedRoutingDelay, potentialDelayUnits);
-        boolean ret = check.check();
-        invalidVars = check.invalidVars;
-        return ret;
+        return new checkWithoutRing(testedGraphs, rootCandidates, expectedRoutingDelay, potentialDelayUnits);
+    }
+
+    /**
+     * Check the current solution with all graphs, and get lazy cuts of the form (expr <= 0)
+     * forbidding the useless islands found.
+     * <p>
+     * For a useless island I of (valNode, fanout), a used routingNode in I must be fed by
+     * a used routingNode outside I or by the function node where the valNode is produced.
+     *
+     * @param afterPlacementF the placement result when placement and routing are separated, otherwise null
+     * @param cutF            the placement variables used in cuts, or null when afterPlacementF is used as constants
+     */
+    List<GRBLinExpr> getRingCuts(Integer[] afterPlacementF, GRBVar[] R, GRBVar[] S, GRBVar[] cutF)
+            throws GRBException {
+        List<GRBLinExpr> cuts = new ArrayList<>();
+        checkWithoutRing check = buildRingCheck();
+        if (check.checkAll()) {
+            return cuts;
+        }
+        for (int i = 0; i < check.uselessIslands.size(); i++) {
+            int[] key = testedGraphKeys.get(check.uselessIslandGraphs.get(i));
+            int val = key[0];
+            int fanout = key[1];
+            int producer = DFGValB2opMap.get(DFGValNodeName.get(val));
+            Set<Integer> island = check.uselessIslands.get(i);
+
+            GRBLinExpr entering = new GRBLinExpr();
+            Set<Integer> enteringNodes = new HashSet<>();
+            Set<Integer> enteringFunctions = new HashSet<>();
+            for (int r : island) {
+                List<Integer> fanins = MRRGRoutingFanin.get(r);
+                for (int j = 0; j < fanins.size(); j++) {
+                    int in = fanins.get(j);
+                    if (MRRGRoutingFaninType.get(r).get(j) == 0) {
+                        if (!island.contains(in) && RIndex(val, in) != -1 && enteringNodes.add(in)) {
+                            entering.addTerm(-1.0, getRoutingVar(R, S, val, in, fanout));
+                        }
+                    } else {
+                        int indexF = FIndex(producer, in);
+                        if (indexF != -1 && enteringFunctions.add(in)) {
+                            if (cutF != null) {
+                                entering.addTerm(-1.0, cutF[indexF]);
+                            } else {
+                                entering.addConstant(-afterPlacementF[indexF]);
+                            }
+                        }
+                    }
+                }
+            }
+            for (int r : island) {
+                GRBLinExpr cut = new GRBLinExpr(entering);
+                cut.addTerm(1.0, getRoutingVar(R, S, val, r, fanout));
+                cuts.add(cut);
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * Get the variable indicating whether a routingNode is used by a fanout of a valNode,
+     * which is consistent with {@code getGraph}.
+     */
+    GRBVar getRoutingVar(GRBVar[] R, GRBVar[] S, int val, int r, int fanout) {
+        int index = RIndex(val, r);
+        if (DFGValNodeOut.get(val).size() > 1) {
+            return S[SOffset[index] + fanout];
+        }
+        return R[index];
+    }
+
+    /**
+     * Set the routing solution used by the ring check, and initialize mappedOp2MrrgMap.
+     *
+     * @param solF            values of F, or null when afterPlacementF is used
+     * @param afterPlacementF the placement result when placement and routing are separated, otherwise null
+     */
+    void setRoutingSolution(double[] solR, double[] solS, double[] solDelays, double[] solF,
+                            Integer[] afterPlacementF) {
+        this.solR = solR;
+        this.solS = solS;
+        this.solDelays = solDelays;
+        if (solF == null) {
+            solF = new double[afterPlacementF.length];
+            for (int i = 0; i < afterPlacementF.length; i++) {
+                solF[i] = afterPlacementF[i];
+            }
+        }
+        this.solF = solF;
+        initOp2MrrgMap();
     }
 
     /**
      * Constraint: Routing Resource Usage.
      */
-    void constrRoutingResource(GRBModel model, GRBVar[] R, List<GRBVar[]> S) throws GRBException {
+    void constrRoutingResource(bulkModel model, GRBVar[] R, List<GRBVar[]> S) throws GRBException {
         int constrcount = 0;
-        for (int val = 0; val < numDfgVals; val++)
-            for (int r = 0; r < numMrrgR; r++) {
-                for (int k = 0; k < S.get(RIndex(val, r)).length; k++) {
-                    model.addConstr(R[RIndex(val, r)], GRB.GREATER_EQUAL, S.get(RIndex(val, r))[k],
-                            "sub_val" + (constrcount++));
-                }
+        for (int i = 0; i < countR; i++) {
+            for (int k = 0; k < S.get(i).length; k++) {
+                model.addConstr(R[i], GRB.GREATER_EQUAL, S.get(i)[k],
+                        model.name("sub_val", (constrcount++)));
             }
+        }
     }
 
     /**
      * Constraint: Legality of Delay and WaitSkew.
      */
-    <T> void constrDelay(GRBModel model, List<GRBVar[]> S, GRBVar[] R, GRBVar[] Delays, GRBVar[] L_R,
+    <T> void constrDelay(bulkModel model, List<GRBVar[]> S, GRBVar[] R, GRBVar[] Delays, GRBVar[] L_R,
                          GRBVar[] Latencies, GRBVar[] WaitSkews, T[] F, Boolean VariableF) throws GRBException {
 
         for (int r = 0; r < numMrrgR; r++) {
+            List<Integer> legalVals = routingLegalVals.get(r);
+            if (legalVals.isEmpty()) {
+                continue;
+            }
             List<Integer> fanIns = MRRGRoutingFanin.get(r);
             List<Integer> fanInTypes = MRRGRoutingFaninType.get(r);
             int size = fanIns.size();
@@ -873,45 +1543,46 @@ public class gurobiMapJava {
                         latch = MRRGLatency.get(name);
                     }
                     expr.addTerm(1, L_R[fanInID]);
-                    passValue.set(GRB.StringAttr.VarName, "passValueR2R_" + fanInID + "_" + r);
-                    GRBVar[] valueChosen = model.addVars(numDfgVals, 'B');
+                    model.setName(passValue, model.name("passValueR2R_", fanInID, "_", r));
                     GRBLinExpr constraintPassValue = new GRBLinExpr();
-                    for (int val = 0; val < numDfgVals; val++) {
-                        valueChosen[val].set(GRB.StringAttr.VarName, "passValueR2R_" + fanInID + "_" + r + "_val" + val);
+                    for (int val : legalVals) {
+                        if (RIndex(val, fanInID) == -1) continue;
+                        GRBVar valueChosen = model.addVar(0, 1, 0, 'B',
+                                model.name("passValueR2R_", fanInID, "_", r, "_val", val));
                         GRBVar[] pairR = {R[RIndex(val, r)], R[RIndex(val, fanInID)]};
-                        model.addGenConstrAnd(valueChosen[val], pairR, "validPassValueR2R_" + fanInID + "_" + r + "_val" + val);
-                        constraintPassValue.addTerm(1.0, valueChosen[val]);
+                        model.addGenConstrAnd(valueChosen, pairR, model.name("validPassValueR2R_", fanInID, "_", r, "_val", val));
+                        constraintPassValue.addTerm(1.0, valueChosen);
                     }
-                    model.addConstr(constraintPassValue, GRB.EQUAL, passValue, "exclusivity_" + "passValueR2R_" + fanInID + "_" + r);
+                    model.addConstr(constraintPassValue, GRB.EQUAL, passValue, model.name("exclusivity_passValueR2R_", fanInID, "_", r));
                 } else {
                     String name = MRRGFunctionName.get(fanInID);
                     if (MRRGLatency.containsKey(name)) {
                         latch = MRRGLatency.get(name);
                     }
-                    passValue.set(GRB.StringAttr.VarName, "passValueF2R_" + fanInID + "_" + r);
+                    model.setName(passValue, model.name("passValueF2R_", fanInID, "_", r));
 
-                    GRBVar[] valueChosen = model.addVars(numDfgOps, 'B');
                     GRBLinExpr constraintPassValue = new GRBLinExpr();
-                    for (int val = 0; val < numDfgVals; val++) {
-                        valueChosen[val].set(GRB.StringAttr.VarName, "passValueF2R_" + fanInID + "_" + r + "_val" + val);
+                    for (int val : legalVals) {
                         String valName = DFGValNodeName.get(val);
+                        int indexF = FIndex(DFGValB2opMap.get(valName), fanInID);
+                        if (indexF == -1) continue;
+                        if (!VariableF && Integer.class.cast(F[indexF]) != 1) continue;
+                        GRBVar valueChosen = model.addVar(0, 1, 0, 'B',
+                                model.name("passValueF2R_", fanInID, "_", r, "_val", val));
                         if (VariableF) {
-                            GRBVar[] pairR = {R[RIndex(val, r)], (GRBVar) F[FIndex(DFGValB2opMap.get(valName), fanInID)]};
-                            model.addGenConstrAnd(valueChosen[val], pairR, "validPassValueF2R_" + fanInID + "_" + r + "_val" + val);
+                            GRBVar[] pairR = {R[RIndex(val, r)], (GRBVar) F[indexF]};
+                            model.addGenConstrAnd(valueChosen, pairR, model.name("validPassValueF2R_", fanInID, "_", r, "_val", val));
                         } else {
-                            int valF = Integer.class.cast(F[FIndex(DFGValB2opMap.get(valName), fanInID)]);
-                            if (valF == 1) {
-                                model.addConstr(R[RIndex(val, r)], GRB.EQUAL, valueChosen[val],
-                                        "validPassValueF2R_" + fanInID + "_" + r + "_val" + val);
-                            }
+                            model.addConstr(R[RIndex(val, r)], GRB.EQUAL, valueChosen,
+                                    model.name("validPassValueF2R_", fanInID, "_", r, "_val", val));
                         }
-                        constraintPassValue.addTerm(1.0, valueChosen[val]);
+                        constraintPassValue.addTerm(1.0, valueChosen);
                     }
-                    model.addConstr(constraintPassValue, GRB.EQUAL, passValue, "exclusivity_" + "passValueF2R_" + fanInID + "_" + r);
+                    model.addConstr(constraintPassValue, GRB.EQUAL, passValue, model.name("exclusivity_passValueF2R_", fanInID, "_", r));
                 }
                 expr.addConstant(latch);
                 expr.addTerm(-1, L_R[r]);
-                model.addGenConstrIndicator(passValue, 1, expr, GRB.EQUAL, 0, "passValueR_" + r + "_fanIn_" + fanIn);
+                model.addGenConstrIndicator(passValue, 1, expr, GRB.EQUAL, 0, model.name("passValueR_", r, "_fanIn_", fanIn));
             }
 
         }
@@ -960,7 +1631,7 @@ public class gurobiMapJava {
 //                }
 
 
-                Delays[constrcount].set(GRB.StringAttr.VarName, "Delay_" + constrcount);
+                model.setName(Delays[constrcount], model.name("Delay_", constrcount));
 
 //                model.addConstr(constraint, GRB.EQUAL, Delays[constrcount], "delay_" + (constrcount));
 
@@ -970,7 +1641,7 @@ public class gurobiMapJava {
                 int sourceID = DFGValB2opMap.get(valName);
                 int sinkID = DFGValNodeOut.get(val).get(fanOut);
 
-                for (int f = 0; f < numMrrgF; f++) {
+                for (int f : opLegalFunction.get(sinkID)) {
                     List<Integer> fanInsF = MRRGFunctionFanin.get(f);
                     List<Integer> fanInTypesF = MRRGFunctionFaninType.get(f);
                     int size = fanInsF.size();
@@ -983,11 +1654,11 @@ public class gurobiMapJava {
                             GRBLinExpr expr = new GRBLinExpr();
                             expr.addTerm(1, L_R[fanInID]);
                             expr.addTerm(-1, Delays[constrcount]);
-                            if (type == 0) {
+                            if (type == 0 && RIndex(val, fanInID) != -1) {
                                 GRBVar[] pairR = {R[RIndex(val, fanInID)], varF};
-                                model.addGenConstrAnd(routingChosen[fanInF], pairR, "routingChosen_" + fanInID + "_" + sinkID + "fanInF");
+                                model.addGenConstrAnd(routingChosen[fanInF], pairR, model.name("routingChosen_", fanInID, "_", sinkID, "fanInF"));
                                 model.addGenConstrIndicator(routingChosen[fanInF], 1, expr, GRB.EQUAL, 0,
-                                        "delay_" + constrcount + "_f" + f + "_fanIn" + fanInF);
+                                        model.name("delay_", constrcount, "_f", f, "_fanIn", fanInF));
                             }
                         }
                     } else {
@@ -995,12 +1666,12 @@ public class gurobiMapJava {
                             for (int fanInF = 0; fanInF < size; fanInF++) {
                                 int type = fanInTypesF.get(fanInF);
                                 int fanInID = fanInsF.get(fanInF);
-                                if (type == 0) {
+                                if (type == 0 && RIndex(val, fanInID) != -1) {
                                     GRBLinExpr expr = new GRBLinExpr();
                                     expr.addTerm(1, L_R[fanInID]);
                                     expr.addTerm(-1, Delays[constrcount]);
                                     model.addGenConstrIndicator(R[RIndex(val, fanInID)], 1, expr, GRB.EQUAL, 0,
-                                            "delay_" + constrcount + "_f" + f + "_fanIn" + fanInF);
+                                            model.name("delay_", constrcount, "_f", f, "_fanIn", fanInF));
                                 }
                             }
                         }
@@ -1017,7 +1688,7 @@ public class gurobiMapJava {
 
                 if (DFGMultipleInputMap.containsKey(sinkName)) {
 
-                    WaitSkews[constrcount].set(GRB.StringAttr.VarName, "WaitSkew_" + sourceName + "_" + sinkName);
+                    model.setName(WaitSkews[constrcount], model.name("WaitSkew_", sourceName, "_", sinkName));
                     waitSkewMap.put("WaitSkew_" + sourceName + "_" + sinkName, constrcount);
                     if (!useRelativeSkew) {
                         int UB = skewLimit / II;
@@ -1025,10 +1696,10 @@ public class gurobiMapJava {
                             UB += 1;
                         }
                         GRBVar DivisibleII = model.addVar(0, UB ,1,
-                                'I', "DivisibleII_"  + constrcount);
+                                'I', model.name("DivisibleII_", constrcount));
                         GRBLinExpr expr = new GRBLinExpr();
                         expr.addTerm(II, DivisibleII);
-                        model.addConstr(expr, GRB.EQUAL, WaitSkews[constrcount], "Slack_divisible_by_II_" + constrcount);
+                        model.addConstr(expr, GRB.EQUAL, WaitSkews[constrcount], model.name("Slack_divisible_by_II_", constrcount));
 //                        if (sourceID == sinkID) {
 //                            WaitSkews[constrcount].set(GRB.DoubleAttr.UB, skewLimit + II);
 //                        } else {
@@ -1040,13 +1711,13 @@ public class gurobiMapJava {
 //                        GRBLinExpr ringConstraint = new GRBLinExpr();
 //                        ringConstraint.addTerm(1.0, WaitSkews[constrcount]);
 //                        ringConstraint.addConstant(II);
-                        model.addConstr(WaitSkews[constrcount], GRB.EQUAL, Delays[constrcount], "waitSkew_" + constrcount);
+                        model.addConstr(WaitSkews[constrcount], GRB.EQUAL, Delays[constrcount], model.name("waitSkew_", constrcount));
                     } else {
-                        model.addConstr(waitSkewConstraint, GRB.EQUAL, Latencies[sinkID], "waitSkew_" + constrcount);
+                        model.addConstr(waitSkewConstraint, GRB.EQUAL, Latencies[sinkID], model.name("waitSkew_", constrcount));
                     }
                 } else {
-                    model.addConstr(waitSkewConstraint, GRB.EQUAL, Latencies[sinkID], "waitSkew_" + constrcount);
-                    model.addConstr(WaitSkews[constrcount], GRB.EQUAL, 0, "singleInputWaitSkew_" + constrcount);
+                    model.addConstr(waitSkewConstraint, GRB.EQUAL, Latencies[sinkID], model.name("waitSkew_", constrcount));
+                    model.addConstr(WaitSkews[constrcount], GRB.EQUAL, 0, model.name("singleInputWaitSkew_", constrcount));
                 }
                 constrcount++;
             }
@@ -1056,39 +1727,45 @@ public class gurobiMapJava {
     /**
      * Set Latency Range.
      */
-    void setLatencyRange(GRBVar[] Latencies, GRBVar[] L_R, int maxLatency) throws GRBException {
+    void setLatencyRange(bulkModel model, GRBVar[] Latencies, GRBVar[] L_R, int maxLatency) throws GRBException {
         int minLatency = 0;
         for (int op = 0; op < numDfgOps; op++) {
-            Latencies[op].set(GRB.StringAttr.VarName, "Latency_" + op);
-            Latencies[op].set(GRB.DoubleAttr.LB, minLatency);
-            Latencies[op].set(GRB.DoubleAttr.UB, maxLatency);
+            model.setName(Latencies[op], model.name("Latency_", op));
         }
-
         for (int r = 0; r < numMrrgR; r++) {
-            L_R[r].set(GRB.StringAttr.VarName, "Latency_R_" + r);
-            L_R[r].set(GRB.DoubleAttr.LB, minLatency);
-            L_R[r].set(GRB.DoubleAttr.UB, maxLatency);
+            model.setName(L_R[r], model.name("Latency_R_", r));
         }
+
+        double[] LB = new double[Math.max(numDfgOps, numMrrgR)];
+        double[] UB = new double[Math.max(numDfgOps, numMrrgR)];
+        Arrays.fill(LB, minLatency);
+        Arrays.fill(UB, maxLatency);
+        model.model.set(GRB.DoubleAttr.LB, Latencies, Arrays.copyOf(LB, numDfgOps));
+        model.model.set(GRB.DoubleAttr.UB, Latencies, Arrays.copyOf(UB, numDfgOps));
+        model.model.set(GRB.DoubleAttr.LB, L_R, Arrays.copyOf(LB, numMrrgR));
+        model.model.set(GRB.DoubleAttr.UB, L_R, Arrays.copyOf(UB, numMrrgR));
     }
 
     /**
      * Constraint: Relative Skew Limit.
      */
-    void constrRelativeSkew(GRBModel model, GRBVar[] RelativeSkews, GRBVar[] WaitSkews,
+    void constrRelativeSkew(bulkModel model, GRBVar[] RelativeSkews, GRBVar[] WaitSkews,
                             GRBVar[] SkewDirection, int skewLimit) throws GRBException {
         int constrcount = 0;
+        relativeSkewIndex = new HashMap<>();
         GRBVar[] DivisibleII = model.addVars(RelativeSkews.length, 'I');
         for (String key : DFGMultipleInputMap.keySet()) {
             String sinkNodeName = key;
 //            int sinkID = DFGopnodename.indexOf(sinkNodeName);
-            RelativeSkews[constrcount].set(GRB.StringAttr.VarName, "Skew_" + sinkNodeName);
+            model.setName(RelativeSkews[constrcount], model.name("Skew_", sinkNodeName));
+            relativeSkewIndex.put(sinkNodeName, constrcount);
 
-            DivisibleII[constrcount].set(GRB.StringAttr.VarName, "DivisibleII_"  + constrcount);
+            model.setName(DivisibleII[constrcount], model.name("DivisibleII_", constrcount));
             DivisibleII[constrcount].set(GRB.DoubleAttr.LB, -skewLimit / II);
             DivisibleII[constrcount].set(GRB.DoubleAttr.UB, skewLimit / II);
             GRBLinExpr expr = new GRBLinExpr();
             expr.addTerm(II, DivisibleII[constrcount]);
-            model.addConstr(expr, GRB.EQUAL, RelativeSkews[constrcount], "Skew_divisible_by_II_" + constrcount);
+            model.addConstr(expr, GRB.EQUAL, RelativeSkews[constrcount], model.name("Skew_divisible_by_II_", constrcount));
 //            RelativeSkews[constrcount].set(GRB.DoubleAttr.LB, -skewLimit);
 //            RelativeSkews[constrcount].set(GRB.DoubleAttr.UB, skewLimit);
 //            GRBLinExpr skewConstraint = new GRBLinExpr();
@@ -1125,12 +1802,12 @@ public class gurobiMapJava {
                 selfJoinConstraint.addTerm(direction, selfWaitSkew);
                 selfJoinConstraint.addConstant(-II * direction);
                 model.addConstr(selfJoinConstraint, GRB.EQUAL,
-                        RelativeSkews[constrcount], "relativeSkew_" + constrcount);
+                        RelativeSkews[constrcount], model.name("relativeSkew_", constrcount));
 
-                model.addConstr(anotherWaitSkew, GRB.EQUAL, 0, "anotherWaitSkew_" + constrcount);
+                model.addConstr(anotherWaitSkew, GRB.EQUAL, 0, model.name("anotherWaitSkew_", constrcount));
             } else {
 
-                SkewDirection[constrcount].set(GRB.StringAttr.VarName, "SkewDirection_" + sinkNodeName);
+                model.setName(SkewDirection[constrcount], model.name("SkewDirection_", sinkNodeName));
                 int sourceNum = sourceNodeNames.size();
                 if (sourceNum == 2) {
                     GRBLinExpr relativeConstraint = new GRBLinExpr();
@@ -1142,18 +1819,18 @@ public class gurobiMapJava {
                     relativeConstraint.addTerm(1, waitSkew1);
 
                     model.addConstr(relativeConstraint, GRB.EQUAL,
-                            RelativeSkews[constrcount], "relativeSkew_" + constrcount);
+                            RelativeSkews[constrcount], model.name("relativeSkew_", constrcount));
 
                     GRBLinExpr directionConstraint0 = new GRBLinExpr();
                     directionConstraint0.addTerm(skewLimit, SkewDirection[constrcount]);
                     model.addConstr(directionConstraint0, GRB.GREATER_EQUAL,
-                            waitSkew0, "direction0_" + constrcount);
+                            waitSkew0, model.name("direction0_", constrcount));
 
                     GRBLinExpr directionConstraint1 = new GRBLinExpr();
                     directionConstraint1.addTerm(-skewLimit, SkewDirection[constrcount]);
                     directionConstraint1.addConstant(skewLimit);
                     model.addConstr(directionConstraint1, GRB.GREATER_EQUAL,
-                            waitSkew1, "direction1_" + constrcount);
+                            waitSkew1, model.name("direction1_", constrcount));
                 }
             }
             constrcount++;
@@ -1162,68 +1839,191 @@ public class gurobiMapJava {
 
     /**
      * Set objective for routing.
+     * When latencyObjective is not "none" and Latencies is not null,
+     * the latency objective and the bypass ALU objective are added.
      */
-    void setRoutingObjective(GRBModel model, GRBVar[] R) throws GRBException {
+    void setRoutingObjective(bulkModel model, GRBVar[] R, GRBVar[] Latencies) throws GRBException {
         GRBLinExpr objective = new GRBLinExpr();
         double[] coeffs = new double[countR];
         for (int i = 0; i < countR; i++) coeffs[i] = 1.0;
 
         objective.addTerms(coeffs, R);
-        model.setObjective(objective, GRB.MINIMIZE);
-    }
+        if (Latencies == null || latencyObjective.equals("none")) {
+            model.setObjective(objective, GRB.MINIMIZE);
+            return;
+        }
 
-    /**
-     * Set objective for placement.
+        GRBLinExpr latency = new GRBLinExpr();
+        if (latencyObjective.equals("max")) {
+            GRBVar maxLatencyVar = model.addVar(0, maxLatency, 0, GRB.INTEGER, model.name("MaxLatency"));
+            for (int op = 0; op < numDfgOps; op++) {
+                model.addConstr(maxLatencyVar, GRB.GREATER_EQUAL, Latencies[op], model.name("max_latency_", op));
+            }
+            latency.addTerm(1.0, maxLatencyVar);
+        } else {
+            for (int op = 0; op < numDfgOps; op++) {
+                int val = DFGOpNodeOut.get(op);
+                if (val == -1 || DFGValNodeOut.get(val).isEmpty()) {
+                    latency.addTerm(1.0, Latencies[op]);
+                }
+            }
+        }
+
+        GRBLinExpr bypass = new GRBLinExpr();
+        for (int val = 0; val < numDfgVals; val++)
+            for (int r : valReachableRouting.get(val)) {
+                String name = MRRGRoutingName.get(r);
+                if (name.contains("alu") && name.contains("internalNode")) {
+                    bypass.addTerm(1.0, R[RIndex(val, r)]);
+                }
+            }
+
+        if (hierarchicalObjective) {
+            model.model.set(GRB.IntAttr.ModelSense, GRB.MINIMIZE);
+            model.setObjectiveN(latency, 0, 2, "latency");
+            model.setObjectiveN(objective, 1, 1, "routing");
+            model.setObjectiveN(bypass, 2, 0, "bypass");
+        } else {
+            objective.multAdd(latencyWeight, latency);
+            objective.multAdd(bypassWeight, bypass);
+            model.setObjective(objective, GRB.MINIMIZE);
+        }
+    }
+
+    /**
+     * Build int-indexed DFG edges and the distance matrix between functionalNodes for placement.
+     * Duplicated edges (e.g. a value used twice by the same opNode) are only kept once.
+     * Unreachable pairs of functionalNodes get a distance larger than any reachable pair.
      */
-    void setPlacementObjective(GRBModel model, GRBVar[] F, boolean routingDriven) throws GRBException {
-        GRBLinExpr objective = new GRBLinExpr();
+    void buildPlacementIndex() {
+        Map<String, Integer> opIndex = new HashMap<>();
+        for (int op = 0; op < numDfgOps; op++) {
+            opIndex.put(DFGOpNodeName.get(op), op);
+        }
+        Set<Long> edgeSet = new LinkedHashSet<>();
+        for (List<String> connect : connectList) {
+            long source = opIndex.get(connect.get(0));
+            long sink = opIndex.get(connect.get(1));
+            edgeSet.add(source * numDfgOps + sink);
+        }
+        edgeSource = new int[edgeSet.size()];
+        edgeSink = new int[edgeSet.size()];
+        int edge = 0;
+        for (long key : edgeSet) {
+            edgeSource[edge] = (int) (key / numDfgOps);
+            edgeSink[edge] = (int) (key % numDfgOps);
+            edge++;
+        }
+
+        functionDistance = new int[numMrrgF][numMrrgF];
+        functionNeighborCount = new int[numMrrgF];
+        int maxDistance = 0;
         for (int pSource = 0; pSource < numMrrgF; pSource++) {
-            for (int qSource = 0; qSource < numDfgOps; qSource++) {
-                String sourceDFGName = DFGOpNodeName.get(qSource);
-                for (int pSink = 0; pSink < numMrrgF; pSink++) {
-                    for (int qSink = 0; qSink < numDfgOps; qSink++) {
-                        String sinkDFGName = DFGOpNodeName.get(qSink);
-                        List<String> namePair = new LinkedList<String>() {{
-                            add(sourceDFGName);
-                            add(sinkDFGName);
-                        }};
-                        if (connectList.contains(namePair) &&
-                                MRRGFunctionSupportOpcode.get(pSource).contains(DFGOpNodeOpcode.get(qSource)) &&
-                                MRRGFunctionSupportOpcode.get(pSink).contains(DFGOpNodeOpcode.get(qSink))) {
-                            String varName = "concurrentF_" + pSource + "_" + qSource + "_" + pSink + "_" + qSink;
-                            GRBVar concurrentF = model.addVar(0, 1, 1, 'B', varName);
-                            String sourceMRRGName = MRRGFunctionName.get(pSource);
-                            String sinkMRRGName = MRRGFunctionName.get(pSink);
-                            int distence = MRRGDistance.get(new LinkedList<String>() {{
-                                add(sourceMRRGName);
-                                add(sinkMRRGName);
-                            }});
-                            GRBVar[] tempF = {F[FIndex(qSource, pSource)], F[FIndex(qSink, pSink)]};
-                            model.addGenConstrAnd(concurrentF, tempF,
-                                    "and_" + varName);
-                            if (routingDriven && distence < neighboringDistance) {
-                                objective.addTerm(MRRGNeighboringNode.get(sourceMRRGName).size()
-                                                * iterationNum / 80.0
-                                        , concurrentF);
-                            }
-                            objective.addTerm(distence, concurrentF);
-                        }
+            String sourceMRRGName = MRRGFunctionName.get(pSource);
+            Set<String> neighbors = MRRGNeighboringNode.get(sourceMRRGName);
+            functionNeighborCount[pSource] = neighbors == null ? 0 : neighbors.size();
+            for (int pSink = 0; pSink < numMrrgF; pSink++) {
+                Integer distance = MRRGDistance.get(Arrays.asList(sourceMRRGName, MRRGFunctionName.get(pSink)));
+                if (distance == null || distance >= unreachableDistance) {
+                    functionDistance[pSource][pSink] = unreachableDistance;
+                } else {
+                    functionDistance[pSource][pSink] = distance;
+                    maxDistance = Math.max(maxDistance, distance);
+                }
+            }
+        }
+        maxFunctionDistance = maxDistance;
+    }
 
+    /**
+     * Set objective for placement.
+     * The objective is built from DFG edges:
+     * for each edge and each pair of legal functionalNodes of its source and sink,
+     * the distance between the functionalNodes is paid when both placements are chosen.
+     *
+     * @param routingDriven a parameter indicating whether neighboring functionalNodes are penalized
+     *                      according to the iteration number, in order to leave room for routing
+     */
+    void setPlacementObjective(bulkModel model, GRBVar[] F, boolean routingDriven) throws GRBException {
+        if (edgeSource == null) {
+            buildPlacementIndex();
+        }
+        if (compactPlacementObjective) {
+            setCompactPlacementObjective(model, F, routingDriven);
+            return;
+        }
+        GRBLinExpr objective = new GRBLinExpr();
+        double congestionWeight = iterationNum / 80.0;
+        for (int e = 0; e < edgeSource.length; e++) {
+            int qSource = edgeSource[e];
+            int qSink = edgeSink[e];
+            for (int pSource : opLegalFunction.get(qSource)) {
+                GRBVar sourceF = F[FIndex(qSource, pSource)];
+                if (qSource == qSink) {
+                    //A self-loop always uses the same functionalNode, whose distance is 0.
+                    if (routingDriven) {
+                        objective.addTerm(functionNeighborCount[pSource] * congestionWeight, sourceF);
                     }
+                    continue;
+                }
+                for (int pSink : opLegalFunction.get(qSink)) {
+                    int distance = functionDistance[pSource][pSink];
+                    double coeff = distance;
+                    if (routingDriven && distance < neighboringDistance) {
+                        coeff += functionNeighborCount[pSource] * congestionWeight;
+                    }
+                    if (coeff == 0) continue;
+                    GRBVar concurrentF = model.addVar(0, 1, 0, 'B',
+                            model.name("concurrentF_", pSource, "_", qSource, "_", pSink, "_", qSink));
+                    GRBVar[] tempF = {sourceF, F[FIndex(qSink, pSink)]};
+                    model.addGenConstrAnd(concurrentF, tempF, model.name("and_concurrentF_", e, "_", pSource, "_", pSink));
+                    objective.addTerm(coeff, concurrentF);
                 }
-
             }
         }
 
-//        if (routingDriven) {
-//            for (int p = 0; p < numMrrgF; p++) {
-//                for (int q = 0; q < numDfgOps; q++){
-//                    objective.addTerm(MRRGNeighboringNode.get(MRRGFunctionName.get(p)).size()
-//                                    * iterationNum / 20.0
-//                            , F[FIndex(q, p)]);
-//                }
-//            }
-//        }
+        model.setObjective(objective, GRB.MINIMIZE);
+    }
+
+    /**
+     * Set a compact linearized objective for placement.
+     * Each DFG edge e = (u, v) gets one continuous variable Dis_e, and for each legal functionalNode q of v:
+     * Dis_e >= sum_p distance(p, q) * F_u,p - M_q * (1 - F_v,q), where M_q = max_p distance(p, q).
+     * The number of variables and constraints grows with edges * candidate functionalNodes.
+     * The routing-driven term is charged on the functionalNode of the source opNode directly.
+     */
+    void setCompactPlacementObjective(bulkModel model, GRBVar[] F, boolean routingDriven) throws GRBException {
+        GRBLinExpr objective = new GRBLinExpr();
+        double congestionWeight = iterationNum / 80.0;
+        for (int e = 0; e < edgeSource.length; e++) {
+            int qSource = edgeSource[e];
+            int qSink = edgeSink[e];
+            List<Integer> sourceFunctions = opLegalFunction.get(qSource);
+            if (routingDriven) {
+                for (int pSource : sourceFunctions) {
+                    objective.addTerm(functionNeighborCount[pSource] * congestionWeight, F[FIndex(qSource, pSource)]);
+                }
+            }
+            if (qSource == qSink) continue;
+            GRBVar distanceVar = model.addVar(0, GRB.INFINITY, 0, 'C', model.name("Dis_", e));
+            for (int pSink : opLegalFunction.get(qSink)) {
+                int bigM = 0;
+                GRBLinExpr expr = new GRBLinExpr();
+                for (int pSource : sourceFunctions) {
+                    //unreachable pairs are charged above all reachable ones, with a small big-M
+                    int distance = Math.min(functionDistance[pSource][pSink], 2 * maxFunctionDistance + 1);
+                    bigM = Math.max(bigM, distance);
+                    if (distance != 0) {
+                        expr.addTerm(distance, F[FIndex(qSource, pSource)]);
+                    }
+                }
+                if (bigM == 0) continue;
+                expr.addTerm(bigM, F[FIndex(qSink, pSink)]);
+                expr.addConstant(-bigM);
+                model.addConstr(distanceVar, GRB.GREATER_EQUAL, expr, model.name("dis_", e, "_", pSink));
+            }
+            objective.addTerm(1, distanceVar);
+        }
 
         model.setObjective(objective, GRB.MINIMIZE);
     }
@@ -1231,46 +2031,243 @@ public class gurobiMapJava {
     /**
      * Constraint: Routing Exclusivity.
      */
-    void constrRoutingExclusivity(GRBModel model, GRBVar[] R) throws GRBException {
+    void constrRoutingExclusivity(bulkModel model, GRBVar[] R) throws GRBException {
         int constrcount = 0;
         for (int r = 0; r < numMrrgR; r++) {
+            List<Integer> legalVals = routingLegalVals.get(r);
+            if (legalVals.size() < 2) continue;
             GRBLinExpr constraint = new GRBLinExpr();
-            for (int val = 0; val < numDfgVals; val++)
+            for (int val : legalVals)
                 constraint.addTerm(1.0, R[RIndex(val, r)]);
-            model.addConstr(constraint, GRB.LESS_EQUAL, 1, "route_exclusivity_" + (constrcount++));
+            model.addConstr(constraint, GRB.LESS_EQUAL, 1, model.name("route_exclusivity_", (constrcount++)));
         }
     }
 
     /**
      * Constraint: Functional Unit Exclusivity.
      */
-    void constrFunctionExclusivity(GRBModel model, GRBVar[] F) throws GRBException {
+    void constrFunctionExclusivity(bulkModel model, GRBVar[] F) throws GRBException {
         int constrcount = 0;
         for (int p = 0; p < numMrrgF; p++) {
+            List<Integer> legalOps = functionLegalOps.get(p);
+            if (legalOps.size() < 2) continue;
             GRBLinExpr constraint = new GRBLinExpr();
-            for (int q = 0; q < numDfgOps; q++)
+            for (int q : legalOps)
                 constraint.addTerm(1.0, F[FIndex(q, p)]);
-            model.addConstr(constraint, GRB.LESS_EQUAL, 1, "function_unit_exclusivity_" + (constrcount++));
+            model.addConstr(constraint, GRB.LESS_EQUAL, 1, model.name("function_unit_exclusivity_", (constrcount++)));
         }
     }
 
     /**
      * Constraint: All Operation Placement.
+     * An opNode without any legal functionalNode leads to an empty sum, so the model is infeasible.
      */
-    void constrOperationPlacement(GRBModel model, GRBVar[] F) throws GRBException {
+    void constrOperationPlacement(bulkModel model, GRBVar[] F) throws GRBException {
         int constrcount = 0;
         for (int q = 0; q < numDfgOps; q++) {
             GRBLinExpr constraint = new GRBLinExpr();
-            for (int p = 0; p < numMrrgF; p++)
+            for (int p : opLegalFunction.get(q))
                 constraint.addTerm(1.0, F[FIndex(q, p)]);
-            model.addConstr(constraint, GRB.EQUAL, 1, "ensure_all_ops_mapped_" + (constrcount++));
+            model.addConstr(constraint, GRB.EQUAL, 1, model.name("ensure_all_ops_mapped_", (constrcount++)));
+        }
+    }
+
+    /**
+     * Find groups of interchangeable PEs.
+     * <p>
+     * Nodes are grouped into PE blocks by the name pattern "pe_x_y", and a node is identified in its block
+     * by its cycle and the rest of its name. Blocks with the same nodes, opcodes, latencies and port sizes
+     * are candidates. A pair of candidates is interchangeable only if swapping their nodes in all cycles
+     * maps every edge and every ordered function fan-in to itself, and keeps fixedMapRelation.
+     * Interchanging a PE with each other PE of a group generates all permutations of the group.
+     *
+     * @return the groups of PEs, each PE is given by the unified indexes of its nodes aligned with other PEs
+     */
+    List<List<List<Integer>>> findSymmetricPEs() {
+        int numNodes = numMrrgF + numMrrgR;
+        Pattern pattern = Pattern.compile("^(\\d+:)?(.*\\bpe_\\d+_\\d+)(\\..*)$");
+        Map<String, TreeMap<String, Integer>> blocks = new TreeMap<>();
+        for (int node = 0; node < numNodes; node++) {
+            String name = node < numMrrgF ? MRRGFunctionName.get(node) : MRRGRoutingName.get(node - numMrrgF);
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                String local = (matcher.group(1) == null ? "" : matcher.group(1)) + matcher.group(3);
+                blocks.computeIfAbsent(matcher.group(2), k -> new TreeMap<>()).put(local, node);
+            }
+        }
+
+        Map<String, List<List<Integer>>> candidates = new LinkedHashMap<>();
+        for (TreeMap<String, Integer> block : blocks.values()) {
+            StringBuilder signature = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : block.entrySet()) {
+                int node = entry.getValue();
+                signature.append(entry.getKey()).append('|');
+                if (node < numMrrgF) {
+                    signature.append("F").append(MRRGFunctionSupportOpcode.get(node))
+                            .append(MRRGFunctionFanin.get(node).size()).append('/')
+                            .append(MRRGFunctionFanout.get(node).size());
+                } else {
+                    signature.append("R").append(MRRGRoutingFanin.get(node - numMrrgF).size()).append('/')
+                            .append(MRRGRoutingFanout.get(node - numMrrgF).size());
+                }
+                String name = node < numMrrgF ? MRRGFunctionName.get(node) : MRRGRoutingName.get(node - numMrrgF);
+                signature.append('|').append(MRRGLatency.getOrDefault(name, 0)).append(';');
+            }
+            candidates.computeIfAbsent(signature.toString(), k -> new ArrayList<>())
+                    .add(new ArrayList<>(block.values()));
+        }
+
+        Set<Long> edges = new HashSet<>();
+        List<List<Integer>> fanouts = new ArrayList<>();
+        for (int node = 0; node < numNodes; node++) {
+            List<Integer> fanout = new ArrayList<>();
+            List<Integer> outs = node < numMrrgF ? MRRGFunctionFanout.get(node) : MRRGRoutingFanout.get(node - numMrrgF);
+            List<Integer> types = node < numMrrgF ? MRRGFunctionFanoutType.get(node) :
+                    MRRGRoutingFanoutType.get(node - numMrrgF);
+            for (int i = 0; i < outs.size(); i++) {
+                int out = types.get(i) == 1 ? outs.get(i) : numMrrgF + outs.get(i);
+                fanout.add(out);
+                edges.add((long) node * numNodes + out);
+            }
+            fanouts.add(fanout);
+        }
+
+        List<List<List<Integer>>> groups = new ArrayList<>();
+        for (List<List<Integer>> candidate : candidates.values()) {
+            List<List<Integer>> remaining = new ArrayList<>(candidate);
+            while (remaining.size() > 1) {
+                List<Integer> head = remaining.remove(0);
+                List<List<Integer>> group = new ArrayList<>();
+                group.add(head);
+                Iterator<List<Integer>> iterator = remaining.iterator();
+                while (iterator.hasNext()) {
+                    List<Integer> other = iterator.next();
+                    if (isInterchangeable(head, other, fanouts, edges)) {
+                        group.add(other);
+                        iterator.remove();
+                    }
+                }
+                if (group.size() > 1) {
+                    List<List<Integer>> functionGroup = new ArrayList<>();
+                    for (List<Integer> pe : group) {
+                        List<Integer> functions = new ArrayList<>();
+                        for (int node : pe) {
+                            if (node < numMrrgF) {
+                                functions.add(node);
+                            }
+                        }
+                        functionGroup.add(functions);
+                    }
+                    groups.add(functionGroup);
+                }
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Check whether swapping two aligned PE blocks is an automorphism of the MRRG.
+     */
+    boolean isInterchangeable(List<Integer> a, List<Integer> b, List<List<Integer>> fanouts, Set<Long> edges) {
+        int numNodes = numMrrgF + numMrrgR;
+        int[] perm = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            perm[node] = node;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            perm[a.get(i)] = b.get(i);
+            perm[b.get(i)] = a.get(i);
+        }
+        Set<Integer> moved = new HashSet<>(a);
+        moved.addAll(b);
+        for (int node = 0; node < numNodes; node++) {
+            for (int out : fanouts.get(node)) {
+                if ((moved.contains(node) || moved.contains(out)) &&
+                        !edges.contains((long) perm[node] * numNodes + perm[out])) {
+                    return false;
+                }
+            }
+        }
+        for (int f : moved) {
+            if (f >= numMrrgF) {
+                continue;
+            }
+            List<Integer> fanin = MRRGFunctionFanin.get(f);
+            List<Integer> faninType = MRRGFunctionFaninType.get(f);
+            List<Integer> swappedFanin = MRRGFunctionFanin.get(perm[f]);
+            List<Integer> swappedFaninType = MRRGFunctionFaninType.get(perm[f]);
+            for (int k = 0; k < fanin.size(); k++) {
+                int in = faninType.get(k) == 1 ? fanin.get(k) : numMrrgF + fanin.get(k);
+                int swappedIn = swappedFaninType.get(k) == 1 ? swappedFanin.get(k) : numMrrgF + swappedFanin.get(k);
+                if (perm[in] != swappedIn) {
+                    return false;
+                }
+            }
+        }
+        for (Set<Integer> legal : fixedMapRelation.values()) {
+            for (int f : legal) {
+                if (!legal.contains(perm[f])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Constraint: Symmetry Breaking of interchangeable PEs.
+     * In each group, the first opNode which can be placed in the group is placed in the first PE,
+     * then the other PEs are ordered by the number of opNodes placed in them.
+     * Groups are disjoint, so these constraints together keep at least one of the symmetric placements.
+     */
+    void constrSymmetryBreaking(bulkModel model, GRBVar[] F) throws GRBException {
+        if (symmetricPEs == null) {
+            symmetricPEs = findSymmetricPEs();
+        }
+        for (List<List<Integer>> group : symmetricPEs) {
+            int firstOp = -1;
+            for (int q = 0; q < numDfgOps && firstOp == -1; q++) {
+                for (int f : group.get(0)) {
+                    if (FIndex(q, f) != -1) {
+                        firstOp = q;
+                        break;
+                    }
+                }
+            }
+            if (firstOp == -1) {
+                continue;
+            }
+            GRBLinExpr orbit = new GRBLinExpr();
+            for (int pe = 1; pe < group.size(); pe++) {
+                for (int f : group.get(pe)) {
+                    if (FIndex(firstOp, f) != -1) {
+                        orbit.addTerm(1.0, F[FIndex(firstOp, f)]);
+                    }
+                }
+            }
+            model.addConstr(orbit, GRB.EQUAL, 0, model.name("symmetry_orbit_", (symmetryBreakingCount++)));
+
+            for (int pe = 1; pe + 1 < group.size(); pe++) {
+                GRBLinExpr order = new GRBLinExpr();
+                for (int f : group.get(pe)) {
+                    for (int q : functionLegalOps.get(f)) {
+                        order.addTerm(1.0, F[FIndex(q, f)]);
+                    }
+                }
+                for (int f : group.get(pe + 1)) {
+                    for (int q : functionLegalOps.get(f)) {
+                        order.addTerm(-1.0, F[FIndex(q, f)]);
+                    }
+                }
+                model.addConstr(order, GRB.GREATER_EQUAL, 0, model.name("symmetry_order_", (symmetryBreakingCount++)));
+            }
         }
     }
 
 //    /**
 //     * Constraint: Acyclic Routing.
 //     */
-//    void constrAcyclic(GRBModel model, GRBVar[] R) throws GRBException {
+//    void constrAcyclic(bulkModel model, GRBVar[] R) throws GRBException {
 //        int MRRG_NODE_ROUTING = 0;
 //        for (int val = 0; val < numDfgVals; val++) {
 //            GRBLinExpr sum_of_edges = new GRBLinExpr();
@@ -1310,41 +2307,42 @@ public class gurobiMapJava {
     /**
      * Constraint: Fanout_Routing.
      */
-    <T> void constrFanoutRouting(GRBModel model, List<GRBVar[]> S, T[] F, Boolean VariableF) throws GRBException {
+    <T> void constrFanoutRouting(bulkModel model, List<GRBVar[]> S, T[] F, Boolean VariableF) throws GRBException {
         int constrcount = 0;
         int MRRG_NODE_ROUTING = 0;
         int MRRG_NODE_FUNCTION = 1;
         for (int val = 0; val < numDfgVals; val++)
-            for (int r = 0; r < numMrrgR; r++) {
+            for (int r : valReachableRouting.get(val)) {
                 int val_fanouts = DFGValNodeOut.get(val).size();
 
                 for (int i = 0; i < val_fanouts; i++) {
                     GRBLinExpr sum_of_fanouts = new GRBLinExpr();
                     int fanoutsize = MRRGRoutingFanout.get(r).size();
                     for (int mrrg_fanout = 0; mrrg_fanout < fanoutsize; mrrg_fanout++) {
+                        int outNode = MRRGRoutingFanout.get(r).get(mrrg_fanout);
                         if (MRRGRoutingFanoutType.get(r).get(mrrg_fanout) == MRRG_NODE_ROUTING) {
-                            sum_of_fanouts.addTerm(1.0, S.get(RIndex(val, MRRGRoutingFanout.get(r).
-                                    get(mrrg_fanout)))[i]);
+                            int outIndex = RIndex(val, outNode);
+                            if (outIndex != -1) {
+                                sum_of_fanouts.addTerm(1.0, S.get(outIndex)[i]);
+                            }
                         } else if (MRRGRoutingFanoutType.get(r).get(mrrg_fanout) == MRRG_NODE_FUNCTION) {
                             int op = DFGValNodeOut.get(val).get(i).intValue(), operand =
                                     DFGValNodeOutputOperand.get(val).get(i).intValue();
-                            int outOpNode = MRRGRoutingFanout.get(r).get(mrrg_fanout);
-                            if (MRRGFunctionFanin.get(outOpNode).size() > operand) {
+                            int indexF = FIndex(op, outNode);
+                            if (indexF != -1 && MRRGFunctionFanin.get(outNode).size() > operand) {
                                 if (DFGCommutativeSet.contains(op)
-                                        || MRRGFunctionFanin.get(outOpNode).get(operand) == r) {
+                                        || MRRGFunctionFanin.get(outNode).get(operand) == r) {
                                     if (VariableF) {
-                                        sum_of_fanouts.addTerm(1.0,
-                                                (GRBVar) F[FIndex(op, outOpNode)]);
+                                        sum_of_fanouts.addTerm(1.0, (GRBVar) F[indexF]);
                                     } else {
-                                        sum_of_fanouts.addConstant(Integer.class.cast(F[FIndex(op,
-                                                MRRGRoutingFanout.get(r).get(mrrg_fanout))]));
+                                        sum_of_fanouts.addConstant(Integer.class.cast(F[indexF]));
                                     }
                                 }
                             }
                         }
                     }
                     model.addConstr(sum_of_fanouts, GRB.GREATER_EQUAL, S.get(RIndex(val, r))[i],
-                            "fanout_routing_" + (constrcount++));
+                            model.name("fanout_routing_", (constrcount++)));
                 }
             }
 
@@ -1353,47 +2351,62 @@ public class gurobiMapJava {
     /**
      * Constraint: Multiplexer Input Exclusivity.
      */
-    void constrMultiplexerExclusivity(GRBModel model, GRBVar[] R) throws GRBException {
+    void constrMultiplexerExclusivity(bulkModel model, GRBVar[] R) throws GRBException {
         int constrcount = 0;
         int MRRG_NODE_ROUTING = 0;
         for (int val = 0; val < numDfgVals; val++)
-            for (int r = 0; r < numMrrgR; r++) {
+            for (int r : valReachableRouting.get(val)) {
                 GRBLinExpr sum_of_fanins = new GRBLinExpr();
                 int fanin_count = MRRGRoutingFanin.get(r).size();
                 if (fanin_count > 1) {
                     for (int fanin = 0; fanin < fanin_count; fanin++) {
-                        if (MRRGRoutingFaninType.get(r).get(fanin) == MRRG_NODE_ROUTING)
-                            sum_of_fanins.addTerm(1.0, R[RIndex(val, MRRGRoutingFanin.get(r).get(fanin))]);
+                        int inIndex = RIndex(val, MRRGRoutingFanin.get(r).get(fanin));
+                        if (MRRGRoutingFaninType.get(r).get(fanin) == MRRG_NODE_ROUTING && inIndex != -1)
+                            sum_of_fanins.addTerm(1.0, R[inIndex]);
                     }
                     model.addConstr(sum_of_fanins, GRB.GREATER_EQUAL, R[RIndex(val, r)],
-                            "mux_exclusivity_lower_" + (constrcount++));
+                            model.name("mux_exclusivity_lower_", (constrcount++)));
                     model.addConstr(sum_of_fanins, GRB.LESS_EQUAL, 1,
-                            "mux_exclusivity_upper_" + (constrcount));
+                            model.name("mux_exclusivity_upper_", (constrcount)));
                 }
             }
     }
 
     /**
      * Constraint: Initial Fanout.
+     * A pruned fanout routingNode means the functionalNode cannot drive the valNode,
+     * so the corresponding placement is forbidden.
      */
-    <T> void constrInitialFanout(GRBModel model, List<GRBVar[]> S, T[] F, Boolean VariableF) throws GRBException {
+    <T> void constrInitialFanout(bulkModel model, List<GRBVar[]> S, T[] F, Boolean VariableF) throws GRBException {
         int constrcount = 0;
         for (int op = 0; op < numDfgOps; op++)
-            for (int f = 0; f < numMrrgF; f++) {
+            for (int f : opLegalFunction.get(op)) {
                 if (DFGOpNodeOut.get(op).intValue() != -1) {
                     int val = DFGOpNodeOut.get(op).intValue();
                     int f_fanouts = MRRGFunctionFanout.get(f).size();
+                    int val_fanouts = DFGValNodeOut.get(val).size();
                     for (int r = 0; r < f_fanouts; r++) {
-                        int val_fanouts = DFGValNodeOut.get(val).size();
+                        int outIndex = RIndex(val, MRRGFunctionFanout.get(f).get(r));
+                        if (outIndex == -1) {
+                            if (val_fanouts == 0) continue;
+                            if (VariableF) {
+                                model.addConstr((GRBVar) F[FIndex(op, f)], GRB.EQUAL, 0,
+                                        model.name("function_unit_fanout_", (constrcount++)));
+                            } else if (Integer.class.cast(F[FIndex(op, f)]) == 1) {
+                                model.addConstr(new GRBLinExpr(), GRB.EQUAL, 1,
+                                        model.name("function_unit_fanout_", (constrcount++)));
+                            }
+                            continue;
+                        }
                         for (int i = 0; i < val_fanouts; i++)
                             if (VariableF) {
                                 model.addConstr((GRBVar) F[FIndex(op, f)], GRB.EQUAL,
-                                        S.get(RIndex(val, MRRGFunctionFanout.get(f).get(r)))[i],
-                                        "function_unit_fanout_" + (constrcount++));
+                                        S.get(outIndex)[i],
+                                        model.name("function_unit_fanout_", (constrcount++)));
                             } else {
                                 model.addConstr(Integer.class.cast(F[FIndex(op, f)]), GRB.EQUAL,
-                                        S.get(RIndex(val, MRRGFunctionFanout.get(f).get(r)))[i],
-                                        "function_unit_fanout_" + (constrcount++));
+                                        S.get(outIndex)[i],
+                                        model.name("function_unit_fanout_", (constrcount++)));
                             }
                     }
                 }
@@ -1401,27 +2414,420 @@ public class gurobiMapJava {
     }
 
     /**
-     * Constraint: Functional Unit Legality.
+     * Cancel the mapping from another thread, the models under optimization are terminated
+     * and no more retry is started.
      */
-    void constrFunctionalLegality(GRBModel model, GRBVar[] F) throws GRBException {
-        int constrcount = 0;
-        for (int op = 0; op < numDfgOps; op++)
-            for (int f = 0; f < numMrrgF; f++) {
-                int flag = 0;
-                for (int i = 0; i < MRRGFunctionSupportOpcode.get(f).size(); i++)
-                    if (MRRGFunctionSupportOpcode.get(f).get(i) == DFGOpNodeOpcode.get(op)) {
-                        if (fixedMapRelation.containsKey(op)) {
-                            if (fixedMapRelation.get(op).contains(f)) {
-                                flag = 1;
+    void cancel() {
+        cancelled = true;
+        synchronized (activeModels) {
+            for (GRBModel model : activeModels) {
+                model.terminate();
+            }
+        }
+    }
+
+    /**
+     * Record a model which may be optimized, so that it can be terminated by {@code cancel}.
+     */
+    GRBModel track(GRBModel model) throws GRBException {
+        activeModels.add(model);
+        if (cancelled) {
+            model.set(GRB.DoubleParam.TimeLimit, 0);
+        }
+        return model;
+    }
+
+    /**
+     * Record the numbers of variables, constraints and non-zeros of an updated model.
+     */
+    void recordModelSize(GRBModel model, String label) throws GRBException {
+        metrics.set("vars_" + label, model.get(GRB.IntAttr.NumVars));
+        metrics.set("constrs_" + label, model.get(GRB.IntAttr.NumConstrs));
+        metrics.set("nonzeros_" + label, (long) model.get(GRB.DoubleAttr.DNumNZs));
+    }
+
+    /**
+     * Check whether the progress of solves should be tracked by progressCallback.
+     */
+    boolean tracksProgress() {
+        return progressLog || collectMetrics || !stoppingPolicies.isEmpty();
+    }
+
+    /**
+     * Receive a progress record, and write it when progressLog is true.
+     */
+    synchronized void reportProgress(progressRecord record) {
+        lastProgress = record.toJson();
+        if (record.event.equals("incumbent") && record.incumbent < bestIncumbent) {
+            bestIncumbent = record.incumbent;
+            long elapsed = System.currentTimeMillis() - startTime;
+            metrics.setIfAbsent("first_incumbent_ms", elapsed);
+            metrics.set("best_incumbent_ms", elapsed);
+        }
+        if (progressLog) {
+            String name = (filename == null ? "mapping" : filename) + "_progress.jsonl";
+            try (FileWriter writer = new FileWriter(name, true)) {
+                writer.write(lastProgress + "\n");
+            } catch (IOException e) {
+                System.err.println("Progress log fails: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Receive an early stop given by a stopping policy.
+     */
+    synchronized void reportStop(String label, String reason, progressRecord record) {
+        stopReason = label + ": " + reason;
+        record.event = "stop";
+        reportProgress(record);
+        System.out.println("\033[33;4m" + "Early stop of " + stopReason + "\033[0m");
+    }
+
+    /**
+     * Stop tracking models and dispose them.
+     */
+    void disposeModels(GRBModel... models) {
+        for (GRBModel model : models) {
+            activeModels.remove(model);
+        }
+        grbEnvPool.dispose(models);
+        for (GRBModel model : models) {
+            GRBEnv env = model == null ? null : copyEnvs.remove(model);
+            if (env != null) {
+                try {
+                    env.dispose();
+                } catch (GRBException e) {
+                    System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a model into a new environment owned by the copy, which is disposed with it by {@code disposeModels}.
+     * The Gurobi library has no copy constructor taking an environment, so the model, its parameters,
+     * its start and its hints are written to temporary files and read in the new environment.
+     * The variables of the copy are in the same order as the variables of the model.
+     */
+    GRBModel copyWithOwnEnv(GRBModel model, String label) throws GRBException {
+        File dir;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("pillars_" + label).toFile();
+        } catch (IOException e) {
+            throw new GRBException("Can not create a directory for copying the model: " + e.getMessage());
+        }
+        String prefix = dir.getPath() + File.separator + "model";
+        GRBEnv env = new GRBEnv();
+        try {
+            model.write(prefix + ".prm");
+            env.readParams(prefix + ".prm");
+            model.write(prefix + ".mps");
+            GRBModel copy = new GRBModel(env, prefix + ".mps");
+            copyEnvs.put(copy, env);
+            for (String suffix : new String[]{".mst", ".hnt"}) {
+                try {
+                    model.write(prefix + suffix);
+                    copy.read(prefix + suffix);
+                } catch (GRBException e) {
+                    //the model has no start or no hints
+                }
+            }
+            return copy;
+        } catch (GRBException e) {
+            if (!copyEnvs.containsValue(env)) {
+                env.dispose();
+            }
+            throw e;
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Get the variables of a copied model in the same positions as the given variables.
+     */
+    static GRBVar[] remapVars(GRBVar[] vars, GRBVar[] copyVars) {
+        if (vars == null) {
+            return null;
+        }
+        GRBVar[] ret = new GRBVar[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            ret[i] = copyVars[vars[i].index()];
+        }
+        return ret;
+    }
+
+    /**
+     * Check the current solution of a routing model with the ring check.
+     */
+    synchronized Boolean checkRoutingModel(GRBModel model, GRBVar[] R, GRBVar[] S, GRBVar[] Delays, GRBVar[] F,
+                                           Integer[] afterPlacementF, Boolean scheduleControl) throws GRBException {
+        if (!scheduleControl) {
+            return true;
+        }
+        setRoutingSolution(getX(model, R), getX(model, S), getX(model, Delays),
+                afterPlacementF == null ? getX(model, F) : null, afterPlacementF);
+        return checkRoutingWithoutUselessRing();
+    }
+
+    /**
+     * Optimize the routing model. When portfolioSize > 1, copies of the model are solved concurrently
+     * with different Seed and MIPFocus, each copy in its own environment. The first one whose solution passes
+     * the ring check wins, and the others are terminated and disposed with their environments.
+     *
+     * @param afterPlacementF the placement result when placement and routing are separated, otherwise null
+     * @return the model holding the result, the variable fields are remapped to this model
+     */
+    GRBModel optimizeRouting(GRBModel modelR, Integer[] afterPlacementF, Boolean scheduleControl)
+            throws GRBException {
+        GRBVar[] cutF = afterPlacementF == null ? varF : varFR;
+        if (portfolioSize <= 1) {
+            if (scheduleControl && lazyRingCut) {
+                modelR.set(GRB.IntParam.LazyConstraints, 1);
+                modelR.setCallback(new ringCutCallback(this, "routing", afterPlacementF, varR, varS, varDelays, cutF));
+            } else if (tracksProgress()) {
+                modelR.setCallback(new progressCallback(this, "routing"));
+            }
+            modelR.optimize();
+            return modelR;
+        }
+
+        modelR.update();
+        int[] focus = {1, 0, 2, 3};
+        int threads = Math.max(1, portfolioThreads / portfolioSize);
+        List<GRBModel> copies = new ArrayList<>();
+        List<GRBVar[]> copyVars = new ArrayList<>();
+        for (int i = 0; i < portfolioSize; i++) {
+            GRBModel copy = i == 0 ? modelR : track(copyWithOwnEnv(modelR, "routing_" + i));
+            copy.set(GRB.IntParam.Threads, threads);
+            copy.set(GRB.IntParam.MIPFocus, focus[i % focus.length]);
+            if (i > 0) {
+                copy.set(GRB.IntParam.Seed, abs(RNG.nextInt()));
+            }
+            GRBVar[] vars = copy.getVars();
+            if (scheduleControl && lazyRingCut) {
+                copy.set(GRB.IntParam.LazyConstraints, 1);
+                copy.setCallback(new ringCutCallback(this, "routing_" + i, afterPlacementF, remapVars(varR, vars),
+                        remapVars(varS, vars), remapVars(varDelays, vars), remapVars(cutF, vars)));
+            } else if (tracksProgress()) {
+                copy.setCallback(new progressCallback(this, "routing_" + i));
+            }
+            copies.add(copy);
+            copyVars.add(vars);
+        }
+
+        AtomicInteger winner = new AtomicInteger(-1);
+        List<Integer> finished = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(portfolioSize);
+        for (int i = 0; i < portfolioSize; i++) {
+            final int index = i;
+            executor.submit(() -> {
+                GRBModel copy = copies.get(index);
+                GRBVar[] vars = copyVars.get(index);
+                try {
+                    copy.optimize();
+                    if (winner.get() != -1) {
+                        return;
+                    }
+                    finished.add(index);
+                    int status = copy.get(GRB.IntAttr.Status);
+                    boolean pass = status == GRB.INFEASIBLE;
+                    if (copy.get(GRB.IntAttr.SolCount) > 0) {
+                        pass = checkRoutingModel(copy, remapVars(varR, vars), remapVars(varS, vars),
+                                remapVars(varDelays, vars), afterPlacementF == null ? remapVars(varF, vars) : null,
+                                afterPlacementF, scheduleControl);
+                    }
+                    if (pass && winner.compareAndSet(-1, index)) {
+                        System.out.println("Portfolio copy " + index + " wins.");
+                        for (GRBModel other : copies) {
+                            if (other != copy) {
+                                other.terminate();
                             }
-                        } else {
-                            flag = 1;
                         }
-                        break;
                     }
-                if (flag == 0)
-                    model.addConstr(F[FIndex(op, f)], GRB.EQUAL, 0, "op_support_" + (constrcount++));
+                } catch (GRBException e) {
+                    System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            for (GRBModel copy : copies) {
+                copy.terminate();
+            }
+            Thread.currentThread().interrupt();
+        }
+
+        int index = winner.get();
+        if (index == -1) {
+            index = 0;
+            for (int i : finished) {
+                if (copies.get(i).get(GRB.IntAttr.SolCount) > 0) {
+                    index = i;
+                    break;
+                }
+            }
+        }
+        GRBModel best = copies.get(index);
+        GRBVar[] vars = copyVars.get(index);
+        varR = remapVars(varR, vars);
+        varS = remapVars(varS, vars);
+        varDelays = remapVars(varDelays, vars);
+        varLatencies = remapVars(varLatencies, vars);
+        varWaitSkews = remapVars(varWaitSkews, vars);
+        varRelativeSkews = remapVars(varRelativeSkews, vars);
+        varFR = remapVars(varFR, vars);
+        if (afterPlacementF == null) {
+            varF = remapVars(varF, vars);
+        }
+        best.set(GRB.IntParam.Threads, portfolioThreads);
+        for (GRBModel copy : copies) {
+            if (copy != best) {
+                disposeModels(copy);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Set start values of F from startPlacement.
+     * F of an opNode whose start placement is not legal in this model are left undefined.
+     */
+    void applyPlacementStart(GRBModel model, GRBVar[] F) throws GRBException {
+        if (startPlacement.isEmpty() || F.length == 0) {
+            return;
+        }
+        double[] values = new double[F.length];
+        for (int op = 0; op < numDfgOps; op++) {
+            String name = startPlacement.get(DFGOpNodeName.get(op));
+            int f = name == null ? -1 : MRRGFunctionName.indexOf(name);
+            if (f != -1 && FIndex(op, f) != -1) {
+                values[FIndex(op, f)] = 1;
+            } else {
+                for (int legal : opLegalFunction.get(op)) {
+                    values[FIndex(op, legal)] = GRB.UNDEFINED;
+                }
+            }
+        }
+        model.set(useVarHints ? GRB.DoubleAttr.VarHintVal : GRB.DoubleAttr.Start, F, values);
+    }
+
+    /**
+     * Set start values of R and S from startRouting, and hints of Latency from startLatency.
+     */
+    void applyRoutingStart(GRBModel model, GRBVar[] R, GRBVar[] S, GRBVar[] Latencies) throws GRBException {
+        if (!startRouting.isEmpty() && R.length > 0) {
+            double[] valuesR = new double[R.length];
+            double[] valuesS = new double[S.length];
+            Arrays.fill(valuesR, GRB.UNDEFINED);
+            Arrays.fill(valuesS, GRB.UNDEFINED);
+            for (int val = 0; val < numDfgVals; val++) {
+                List<Set<String>> routes = startRouting.get(DFGValNodeName.get(val));
+                if (routes == null) {
+                    continue;
+                }
+                int fanouts = DFGValNodeOut.get(val).size();
+                Set<String> used = new HashSet<>();
+                for (Set<String> route : routes) {
+                    used.addAll(route);
+                }
+                for (int r : valReachableRouting.get(val)) {
+                    int index = RIndex(val, r);
+                    String name = MRRGRoutingName.get(r);
+                    valuesR[index] = used.contains(name) ? 1 : 0;
+                    if (routes.size() == fanouts) {
+                        for (int k = 0; k < fanouts; k++) {
+                            valuesS[SOffset[index] + k] = routes.get(k).contains(name) ? 1 : 0;
+                        }
+                    } else if (fanouts == 1) {
+                        valuesS[SOffset[index]] = valuesR[index];
+                    }
+                }
+            }
+            GRB.DoubleAttr attr = useVarHints ? GRB.DoubleAttr.VarHintVal : GRB.DoubleAttr.Start;
+            model.set(attr, R, valuesR);
+            if (S.length > 0) {
+                model.set(attr, S, valuesS);
+            }
+        }
+        if (!startLatency.isEmpty() && Latencies != null && Latencies.length > 0) {
+            double[] values = new double[Latencies.length];
+            for (int op = 0; op < numDfgOps; op++) {
+                Integer latency = startLatency.get(DFGOpNodeName.get(op));
+                values[op] = latency == null ? GRB.UNDEFINED : latency;
             }
+            model.set(GRB.DoubleAttr.VarHintVal, Latencies, values);
+        }
+    }
+
+    /**
+     * Fix the placement variables of the routing model to the placement result.
+     */
+    void fixRoutingPlacement(GRBModel modelR, GRBVar[] FR, Integer[] afterPlacementF) throws GRBException {
+        if (FR.length == 0) {
+            return;
+        }
+        double[] bounds = new double[FR.length];
+        for (int i = 0; i < FR.length; i++) {
+            bounds[i] = afterPlacementF[i];
+        }
+        modelR.set(GRB.DoubleAttr.LB, FR, bounds);
+        modelR.set(GRB.DoubleAttr.UB, FR, bounds);
+    }
+
+    /**
+     * Add a feasibility cut to the placement model after the routing model is infeasible.
+     * <p>
+     * The fixed bounds of FR in an IIS of the routing model are the placement decisions
+     * causing the infeasibility, and at least one of them must be changed.
+     * When no IIS is available, the whole placement is forbidden.
+     *
+     * @return false if the routing model is infeasible without any placement decision
+     */
+    Boolean addFeasibilityCut(GRBModel modelP, GRBVar[] F, GRBModel modelR, GRBVar[] FR,
+                              Integer[] afterPlacementF) throws GRBException {
+        GRBLinExpr cut = new GRBLinExpr();
+        int size = 0;
+        try {
+            modelR.computeIIS();
+            int[] iisLB = modelR.get(GRB.IntAttr.IISLB, FR);
+            int[] iisUB = modelR.get(GRB.IntAttr.IISUB, FR);
+            for (int i = 0; i < FR.length; i++) {
+                if (afterPlacementF[i] == 1 && iisLB[i] == 1) {
+                    cut.addConstant(1.0);
+                    cut.addTerm(-1.0, F[i]);
+                    size++;
+                } else if (afterPlacementF[i] == 0 && iisUB[i] == 1) {
+                    cut.addTerm(1.0, F[i]);
+                    size++;
+                }
+            }
+            if (size == 0) {
+                return false;
+            }
+        } catch (GRBException e) {
+            System.out.println("IIS is not available: " + e.getMessage());
+            cut = new GRBLinExpr();
+            for (int i = 0; i < FR.length; i++) {
+                if (afterPlacementF[i] == 1) {
+                    cut.addConstant(1.0);
+                    cut.addTerm(-1.0, F[i]);
+                    size++;
+                }
+            }
+        }
+        modelP.addConstr(cut, GRB.GREATER_EQUAL, 1, "feasibility_cut_" + (feasibilityCutCount++));
+        System.out.println("Feasibility cut with " + size + " placement decisions.");
+        return true;
     }
 
     /**
@@ -1431,7 +2837,8 @@ public class gurobiMapJava {
      * @param scheduleControl a parameter indicating whether the latency and skew should be controlled and obtained in ILP
      */
     GRBModel[] getILPModel(Boolean separatedPR, Boolean scheduleControl) throws GRBException, IOException {
-        GRBEnv env = new GRBEnv();
+        long phase = mappingMetrics.start();
+        GRBEnv env = grbEnvPool.get();
         int timelimit = (int) ((timeLimit - elapsedTime) / 1000);
         double grb_mipgap = 0.2;
         int grb_solnlimit = 2;
@@ -1446,6 +2853,10 @@ public class gurobiMapJava {
         } else {
             env.set(GRB.DoubleParam.TimeLimit, timelimit);
         }
+        if (harvestPool) {
+            grb_solnlimit = Math.max(grb_solnlimit, poolSize);
+            env.set(GRB.IntParam.PoolSolutions, poolSize);
+        }
         env.set(GRB.IntParam.SolutionLimit, grb_solnlimit);
 
         //focus on time
@@ -1454,12 +2865,12 @@ public class gurobiMapJava {
         //a time-quality trade off
 //        env.set(GRB.IntParam.MIPFocus, 2);
 
-        GRBModel modelP = new GRBModel(env);
+        GRBModel modelP = track(new GRBModel(env));
         GRBModel modelR = modelP;
         if (separatedPR) {
             grb_mipgap = 0.001;
             env.set(GRB.DoubleParam.MIPGap, grb_mipgap);
-            modelR = new GRBModel(env);
+            modelR = track(new GRBModel(env));
         }
 
         numDfgVals = DFGValNodeName.size();
@@ -1467,78 +2878,97 @@ public class gurobiMapJava {
         numMrrgR = MRRGRoutingName.size();
         numMrrgF = MRRGFunctionName.size();
         connectSize = connectList.size();
-        countR = numDfgVals * numMrrgR;
-        countF = numDfgOps * numMrrgF;
+        long indexPhase = mappingMetrics.start();
+        buildSparseIndex(scheduleControl);
+        metrics.stop("index", indexPhase);
+        metrics.set("vars_R", countR);
+        metrics.set("vars_F", countF);
+
+        bulkModel bulkP = new bulkModel(modelP, dumpLP);
+        bulkModel bulkR = bulkP;
+        if (separatedPR) {
+            bulkR = new bulkModel(modelR, dumpLP);
+        }
 
         GRBVar[] R = modelR.addVars(countR, 'B');
         GRBVar[] F = modelP.addVars(countF, 'B');
         Integer[] afterPlacementF = new Integer[countF];
 
-
-        List<GRBVar[]> S = new ArrayList<>();
+        /** S_i_j_k of all R_i_j are added with one call.
+         */
+        SOffset = new int[countR + 1];
         for (int val = 0; val < numDfgVals; val++)
-            for (int r = 0; r < numMrrgR; r++) {
-                int num_fanouts = DFGValNodeOut.get(val).size();
-                S.add(modelR.addVars(num_fanouts, 'B'));
-//                if (num_fanouts > 1) {
-//                    S.add(modelR.addVars(num_fanouts, 'B'));
-//                } else {
-//                    S.add(null);
-//                }
+            for (int r : valReachableRouting.get(val)) {
+                int index = RIndex(val, r);
+                SOffset[index + 1] = SOffset[index] + DFGValNodeOut.get(val).size();
             }
-        modelR.update();
-
-        /** Set VarName of R_i_j, R_i_j_k and F_p_q.
+        GRBVar[] flatS = modelR.addVars(SOffset[countR], 'B');
+        List<GRBVar[]> S = new ArrayList<>(countR);
+        for (int i = 0; i < countR; i++) {
+            S.add(Arrays.copyOfRange(flatS, SOffset[i], SOffset[i + 1]));
+        }
+        varR = R;
+        varF = F;
+        varS = flatS;
+        varDelays = null;
+        varLatencies = null;
+        varWaitSkews = null;
+        varRelativeSkews = null;
+
+        /** Set VarName of R_i_j, R_i_j_k and F_p_q, only when the models will be written.
          */
-        for (int val = 0; val < numDfgVals; val++)
-            for (int r = 0; r < numMrrgR; r++) {
-                R[RIndex(val, r)].set(GRB.StringAttr.VarName, "R_" + r + "_" + val);
-                if (S.get(RIndex(val, r)) != null) {
-                    for (int k = 0; k < S.get(RIndex(val, r)).length; k++) {
-                        S.get(RIndex(val, r))[k].set(GRB.StringAttr.VarName, "R_" + r + "_" + val + "_" + k);
+        if (dumpLP) {
+            String[] namesR = new String[countR];
+            String[] namesS = new String[SOffset[countR]];
+            for (int val = 0; val < numDfgVals; val++)
+                for (int r : valReachableRouting.get(val)) {
+                    int index = RIndex(val, r);
+                    namesR[index] = "R_" + r + "_" + val;
+                    for (int k = SOffset[index]; k < SOffset[index + 1]; k++) {
+                        namesS[k] = "R_" + r + "_" + val + "_" + (k - SOffset[index]);
                     }
-                } else {
-                    S.set(RIndex(val, r), new GRBVar[1]);
-                    S.get(RIndex(val, r))[0] = R[RIndex(val, r)];
                 }
-            }
-
-        for (int op = 0; op < numDfgOps; op++)
-            for (int f = 0; f < numMrrgF; f++)
-                F[FIndex(op, f)].set(GRB.StringAttr.VarName, "F_" + f + "_" + op);
-
-        modelR.update();
-
-//        File init = new File("./importantBak/MappingSAT/vadd-24.res");
-//        Scanner s = new Scanner(init);
-//        String nodeName;
-//        while(s.hasNext()){
-//            nodeName = s.next();
-//            GRBVar var = modelR.getVarByName(nodeName);
-//            var.set(GRB.DoubleAttr.Start, 1);
-//        }
-
+            String[] namesF = new String[countF];
+            for (int op = 0; op < numDfgOps; op++)
+                for (int f : opLegalFunction.get(op))
+                    namesF[FIndex(op, f)] = "F_" + f + "_" + op;
+            modelR.update();
+            modelP.update();
+            bulkR.setNames(R, namesR);
+            bulkR.setNames(flatS, namesS);
+            bulkP.setNames(F, namesF);
+        }
 
         /** Constraints of placement.
          */
-        constrFunctionExclusivity(modelP, F);
-        constrOperationPlacement(modelP, F);
-        constrFunctionalLegality(modelP, F);
+        constrFunctionExclusivity(bulkP, F);
+        constrOperationPlacement(bulkP, F);
+        if (symmetryBreaking && startPlacement.isEmpty()) {
+            constrSymmetryBreaking(bulkP, F);
+        }
 
         if (separatedPR) {
 //            GRBVar[] concurrentF = modelP.addVars(num_mrrg_f * num_mrrg_f * connectSize, 'B');
-            setPlacementObjective(modelP, F, true);
-            modelP.update();
-            modelP.write("problem_java_P.lp");
+            setPlacementObjective(bulkP, F, true);
+            bulkP.update();
+            applyPlacementStart(modelP, F);
+            if (dumpLP) {
+                modelP.write("problem_java_P.lp");
+            }
+            recordModelSize(modelP, "placement");
+            metrics.stop("build", phase);
+            phase = mappingMetrics.start();
             modelP.optimize();
+            metrics.stop("solve_placement", phase);
+            phase = mappingMetrics.start();
             int status = modelP.get(GRB.IntAttr.Status);
             int solcnt = modelP.get(GRB.IntAttr.SolCount);
             if (status == GRB.INFEASIBLE || (status == GRB.TIME_LIMIT && solcnt == 0)) {
                 return new GRBModel[]{modelP, modelR};
             }
-            System.arraycopy(modelP.getVars(), 0, F, 0, countF);
+            double[] placementF = getX(modelP, F);
             for (int i = 0; i < F.length; i++) {
-                afterPlacementF[i] = (int) F[i].get(GRB.DoubleAttr.X);
+                afterPlacementF[i] = (int) Math.round(placementF[i]);
 //                if (afterPlacementF[i] > 0) {
 //                    System.out.println(DFGOpNodeName.get(i / numMrrgF) +
 //                            " map to " + MRRGFunctionName.get(i % numMrrgF));
@@ -1547,18 +2977,31 @@ public class gurobiMapJava {
 
         }
 
+        /** With bendersCut, the placement result is given to the routing model as fixed variables FR,
+         * so that the placement decisions in an infeasible routing model can be found by IIS.
+         */
+        GRBVar[] FR = null;
+        if (separatedPR && bendersCut) {
+            FR = modelR.addVars(countF, 'B');
+            fixRoutingPlacement(modelR, FR, afterPlacementF);
+        }
+        varFR = FR;
+
         /** Constraints of routing.
          */
-        constrRoutingResource(modelR, R, S);
-        constrRoutingExclusivity(modelR, R);
-        constrMultiplexerExclusivity(modelR, R);
+        constrRoutingResource(bulkR, R, S);
+        constrRoutingExclusivity(bulkR, R);
+        constrMultiplexerExclusivity(bulkR, R);
 //        constrAcyclic(modelR, R);
-        if (separatedPR) {
-            constrFanoutRouting(modelR, S, afterPlacementF, false);
-            constrInitialFanout(modelR, S, afterPlacementF, false);
+        if (FR != null) {
+            constrFanoutRouting(bulkR, S, FR, true);
+            constrInitialFanout(bulkR, S, FR, true);
+        } else if (separatedPR) {
+            constrFanoutRouting(bulkR, S, afterPlacementF, false);
+            constrInitialFanout(bulkR, S, afterPlacementF, false);
         } else {
-            constrFanoutRouting(modelR, S, F, true);
-            constrInitialFanout(modelR, S, F, true);
+            constrFanoutRouting(bulkR, S, F, true);
+            constrInitialFanout(bulkR, S, F, true);
         }
 
 
@@ -1576,28 +3019,88 @@ public class gurobiMapJava {
             GRBVar[] WaitSkews = modelR.addVars(WaitSkewNum, 'I');
 
 
-            if (separatedPR) {
-                constrDelay(modelR, S, R, Delays, L_R, Latencies, WaitSkews, afterPlacementF, false);
+            varDelays = Delays;
+            varLatencies = Latencies;
+            varWaitSkews = WaitSkews;
+
+            if (FR != null) {
+                constrDelay(bulkR, S, R, Delays, L_R, Latencies, WaitSkews, FR, true);
+            } else if (separatedPR) {
+                constrDelay(bulkR, S, R, Delays, L_R, Latencies, WaitSkews, afterPlacementF, false);
             } else {
-                constrDelay(modelR, S, R, Delays, L_R, Latencies, WaitSkews, F, true);
+                constrDelay(bulkR, S, R, Delays, L_R, Latencies, WaitSkews, F, true);
             }
 
-            setLatencyRange(Latencies, L_R, maxLatency);
+            setLatencyRange(bulkR, Latencies, L_R, maxLatency);
             if (useRelativeSkew) {
                 GRBVar[] RelativeSkews = modelR.addVars(RelativeSkewNum, 'I');
                 GRBVar[] SkewDirection = modelR.addVars(RelativeSkewNum, 'B');
-                constrRelativeSkew(modelR, RelativeSkews, WaitSkews,
+                varRelativeSkews = RelativeSkews;
+                constrRelativeSkew(bulkR, RelativeSkews, WaitSkews,
                         SkewDirection, skewLimit);
             }
         }
 
         /** Set objective.
          */
-        setRoutingObjective(modelR, R);
+        setRoutingObjective(bulkR, R, varLatencies);
 
-        modelR.update();
-        modelR.write("problem_java_R.lp");
-        modelR.optimize();
+        bulkR.update();
+        if (!separatedPR) {
+            applyPlacementStart(modelR, F);
+        }
+        applyRoutingStart(modelR, R, flatS, varLatencies);
+        if (dumpLP) {
+            modelR.write("problem_java_R.lp");
+        }
+        recordModelSize(modelR, "routing");
+        metrics.stop("build", phase);
+        phase = mappingMetrics.start();
+        modelR = optimizeRouting(modelR, separatedPR ? afterPlacementF : null, scheduleControl);
+        metrics.stop("solve_routing", phase);
+        FR = varFR;
+        if (!separatedPR) {
+            modelP = modelR;
+        }
+
+        /** Benders-style loop: re-optimize the same placement model with the new feasibility cut,
+         * and re-optimize the same routing model with the new placement.
+         */
+        while (FR != null && modelR.get(GRB.IntAttr.Status) == GRB.INFEASIBLE && iterationNum < iterationLimit
+                && !cancelled) {
+            elapsedTime = System.currentTimeMillis() - startTime;
+            int remainTime = (int) ((timeLimit - elapsedTime) / 1000);
+            if (remainTime < 1) {
+                break;
+            }
+            System.out.println("\033[33;4m" + "Iteration " + iterationNum + ": fail, add feasibility cut..." + "\033[0m");
+            iterationNum++;
+            if (!addFeasibilityCut(modelP, F, modelR, FR, afterPlacementF)) {
+                System.out.println("\033[31;4m" + "Routing is infeasible with any placement, mapping fail." + "\033[0m");
+                break;
+            }
+            modelP.set(GRB.DoubleParam.TimeLimit, remainTime / 2);
+            phase = mappingMetrics.start();
+            modelP.optimize();
+            metrics.stop("solve_placement", phase);
+            if (modelP.get(GRB.IntAttr.SolCount) == 0) {
+                System.out.println("\033[31;4m" + "No placement remains, mapping fail." + "\033[0m");
+                return new GRBModel[]{modelP, modelR};
+            }
+            double[] placementF = getX(modelP, F);
+            for (int i = 0; i < F.length; i++) {
+                afterPlacementF[i] = (int) Math.round(placementF[i]);
+            }
+            fixRoutingPlacement(modelR, FR, afterPlacementF);
+            modelR.set(GRB.DoubleParam.TimeLimit, remainTime / 2);
+            phase = mappingMetrics.start();
+            modelR = optimizeRouting(modelR, afterPlacementF, scheduleControl);
+            metrics.stop("solve_routing", phase);
+            FR = varFR;
+        }
+        if (scheduleControl && lazyRingCut) {
+            System.out.println("Lazy ring cuts: " + lazyRingCutCount);
+        }
         System.out.println("Placement status: " + modelP.get(GRB.IntAttr.Status));
         System.out.println("Routing status: " + modelR.get(GRB.IntAttr.Status));
         elapsedTime = System.currentTimeMillis() - startTime;
@@ -1613,9 +3116,12 @@ public class gurobiMapJava {
             return new GRBModel[]{modelP, modelR};
         } else if (status == GRB.INFEASIBLE) {
             if (separatedPR) {
-                if (iterationNum < iterationLimit) {
+                if (bendersCut && iterationNum < iterationLimit) {
+                    System.out.println("\033[31;4m" + "Separated P&R mapping fail." + "\033[0m");
+                } else if (iterationNum < iterationLimit && !cancelled) {
                     System.out.println("\033[33;4m" + "Iteration " + iterationNum + ": fail, continue...\033[0m");
                     iterationNum++;
+                    disposeModels(modelP, modelR);
                     return getILPModel(separatedPR, scheduleControl);
                 } else {
                     System.out.println("\033[31;4m" + "Iteration limit reached, mapping fail." + "\033[0m");
@@ -1624,9 +3130,10 @@ public class gurobiMapJava {
                 System.out.println("\033[31;4m" + "Integrated P&R mapping fail." + "\033[0m");
             }
         } else {
-            initOp2MrrgMap(F);
+            readSolution(modelP, modelR);
+            initOp2MrrgMap();
             if(scheduleControl){
-                ringCheckPass = checkRoutingWithoutUselessRing(modelR);
+                ringCheckPass = checkRoutingWithoutUselessRing();
             }else{
                 ringCheckPass = true;
             }
@@ -1650,10 +3157,11 @@ public class gurobiMapJava {
                 } else {
                     System.out.println("\033[33;4m" + "Iteration " + iterationNum + ": success," +
                             " but there remain useless rings of routingNodes." + "\033[0m");
-                    if (ringCheckCount < ringCheckLimit) {
+                    if (ringCheckCount < ringCheckLimit && !cancelled) {
                         ringCheckCount++;
                         iterationNum++;
                         System.out.println("\033[33;4m" + "Ring check fail times: " + ringCheckCount + "\033[0m");
+                        disposeModels(modelP, modelR);
                         return getILPModel(separatedPR, scheduleControl);
                     } else {
                         System.out.println("\033[33;4m" + "Ring check limit reached," +
@@ -1670,10 +3178,11 @@ public class gurobiMapJava {
                     System.out.println("\033[33;4m" + "Integrated P&R mapping success," +
                             " but there remain useless rings of routingNodes." + "\033[0m");
                     if (scheduleControl) {
-                        if (ringCheckCount < ringCheckLimit) {
+                        if (ringCheckCount < ringCheckLimit && !cancelled) {
                             ringCheckCount++;
                             iterationNum++;
                             System.out.println("\033[33;4m" + "Ring check fail times: " + ringCheckCount + "\033[0m");
+                            disposeModels(modelP, modelR);
                             return getILPModel(separatedPR, scheduleControl);
                         } else {
                             System.out.println("\033[33;4m" + "Ring check limit reached," +
@@ -0,0 +1,147 @@
+package pillars.mapping;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timing of mapping phases and size counters of a mapping.
+ * <p>
+ * A phase is timed by {@code start} and {@code stop}, and phases with the same name are accumulated.
+ * The metrics are exported as a JSON object or as CSV lines of (kind, name, value).
+ */
+class mappingMetrics {
+    Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    Map<String, Long> counters = new LinkedHashMap<>();
+
+    /**
+     * Get the start time of a phase.
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Accumulate the time of a phase from its start time.
+     *
+     * @param phase the name of the phase
+     * @param start the start time given by {@code start}
+     */
+    synchronized void stop(String phase, long start) {
+        phaseNanos.merge(phase, System.nanoTime() - start, Long::sum);
+    }
+
+    /**
+     * Accumulate the time of a phase measured elsewhere.
+     *
+     * @param phase   the name of the phase
+     * @param seconds the time in seconds
+     */
+    synchronized void addPhase(String phase, double seconds) {
+        phaseNanos.merge(phase, (long) (seconds * 1e9), Long::sum);
+    }
+
+    /**
+     * Add to a counter.
+     */
+    synchronized void add(String counter, long value) {
+        counters.merge(counter, value, Long::sum);
+    }
+
+    /**
+     * Set a counter when it is not set.
+     */
+    synchronized void setIfAbsent(String counter, long value) {
+        counters.putIfAbsent(counter, value);
+    }
+
+    /**
+     * Get a counter, or defaultValue when it is not set.
+     */
+    synchronized long get(String counter, long defaultValue) {
+        return counters.getOrDefault(counter, defaultValue);
+    }
+
+    /**
+     * Set a counter.
+     */
+    synchronized void set(String counter, long value) {
+        counters.put(counter, value);
+    }
+
+    /**
+     * Add the phases and the counters of other metrics to these metrics.
+     */
+    synchronized void merge(mappingMetrics other) {
+        synchronized (other) {
+            other.phaseNanos.forEach((phase, nanos) -> phaseNanos.merge(phase, nanos, Long::sum));
+            other.counters.forEach((counter, value) -> counters.merge(counter, value, Long::sum));
+        }
+    }
+
+    /**
+     * Get the time of a phase in milliseconds.
+     */
+    synchronized double millis(String phase) {
+        return phaseNanos.getOrDefault(phase, 0L) / 1e6;
+    }
+
+    /**
+     * Get the JSON object of the metrics.
+     *
+     * @param mapper the name of the mapper
+     */
+    synchronized String toJson(String mapper) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"mapper\":\"").append(mapper).append("\",\"phases_ms\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            builder.append(separator).append('"').append(entry.getKey()).append("\":")
+                    .append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1e6));
+            separator = ",";
+        }
+        builder.append("},\"counters\":{");
+        separator = "";
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            builder.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            separator = ",";
+        }
+        builder.append("}}");
+        return builder.toString();
+    }
+
+    /**
+     * Get the CSV lines of the metrics with a header.
+     *
+     * @param mapper the name of the mapper
+     */
+    synchronized String toCsv(String mapper) {
+        StringBuilder builder = new StringBuilder("mapper,kind,name,value\n");
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            builder.append(mapper).append(",phase_ms,").append(entry.getKey()).append(',')
+                    .append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1e6)).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            builder.append(mapper).append(",counter,").append(entry.getKey()).append(',')
+                    .append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the metrics into "filename_metrics.json" and "filename_metrics.csv".
+     *
+     * @param filename the name used to write result
+     * @param mapper   the name of the mapper
+     */
+    void write(String filename, String mapper) throws IOException {
+        try (FileWriter json = new FileWriter(filename + "_metrics.json")) {
+            json.write(toJson(mapper) + "\n");
+        }
+        try (FileWriter csv = new FileWriter(filename + "_metrics.csv")) {
+            csv.write(toCsv(mapper));
+        }
+    }
+}
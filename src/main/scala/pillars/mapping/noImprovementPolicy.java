@@ -0,0 +1,20 @@
+package pillars.mapping;
+
+/**
+ * Stop when the incumbent has not been improved for some seconds.
+ */
+class noImprovementPolicy implements stoppingPolicy {
+    double seconds;
+
+    noImprovementPolicy(double seconds) {
+        this.seconds = seconds;
+    }
+
+    @Override
+    public String check(progressRecord record) {
+        if (record.hasIncumbent() && record.elapsed - record.lastImprovement >= seconds) {
+            return "no incumbent improvement for " + seconds + "s";
+        }
+        return null;
+    }
+}
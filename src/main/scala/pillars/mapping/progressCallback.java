@@ -0,0 +1,135 @@
+package pillars.mapping;
+
+import gurobi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A callback streaming the progress of a MIP solve to the mapper,
+ * and aborting the solve when a stopping policy asks to.
+ * <p>
+ * A record is given on each new incumbent, and at most every progressInterval seconds otherwise.
+ */
+class progressCallback extends GRBCallback {
+    gurobiMapJava mapper;
+    String label;
+    List<stoppingPolicy> policies = new ArrayList<>();
+    double lastReport = -1;
+    double lastIncumbent = GRB.INFINITY;
+    double lastImprovement = 0;
+    double presolveTime = -1;
+    boolean stopped = false;
+
+    /**
+     * Constructed function.
+     *
+     * @param _mapper the mapper receiving the progress
+     * @param _label  the label of the solved model in the records
+     */
+    progressCallback(gurobiMapJava _mapper, String _label) {
+        mapper = _mapper;
+        label = _label;
+        for (Supplier<stoppingPolicy> policy : mapper.stoppingPolicies) {
+            policies.add(policy.get());
+        }
+    }
+
+    @Override
+    protected void callback() {
+        try {
+            if (where == GRB.CB_PRESOLVE) {
+                presolveTime = getDoubleInfo(GRB.CB_RUNTIME);
+                return;
+            }
+            flushPresolve();
+            if (where == GRB.CB_MIPSOL) {
+                reportSolution(true);
+            } else if (where == GRB.CB_MIP) {
+                progressRecord record = newRecord("progress", getDoubleInfo(GRB.CB_MIP_OBJBST),
+                        getDoubleInfo(GRB.CB_MIP_OBJBND), getDoubleInfo(GRB.CB_MIP_NODCNT));
+                if (record.elapsed - lastReport >= mapper.progressInterval) {
+                    lastReport = record.elapsed;
+                    mapper.reportProgress(record);
+                }
+                checkPolicies(record);
+            }
+        } catch (GRBException e) {
+            System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Give the presolve time to the metrics once presolve is finished.
+     */
+    void flushPresolve() {
+        if (presolveTime >= 0) {
+            mapper.metrics.addPhase("presolve", presolveTime);
+            presolveTime = -1;
+        }
+    }
+
+    /**
+     * Report a new solution at CB_MIPSOL.
+     * A solution rejected by a lazy cut is not an incumbent, so only the best accepted objective is reported,
+     * and the stopping policies are not run.
+     *
+     * @param accepted a parameter indicating whether no lazy cut is added for the solution
+     */
+    void reportSolution(boolean accepted) throws GRBException {
+        double best = getDoubleInfo(GRB.CB_MIPSOL_OBJBST);
+        double bound = getDoubleInfo(GRB.CB_MIPSOL_OBJBND);
+        double nodes = getDoubleInfo(GRB.CB_MIPSOL_NODCNT);
+        if (!accepted) {
+            progressRecord record = newRecord("progress", best, bound, nodes);
+            lastReport = record.elapsed;
+            mapper.reportProgress(record);
+            return;
+        }
+        double incumbent = getDoubleInfo(GRB.CB_MIPSOL_OBJ);
+        if (incumbent < lastIncumbent) {
+            lastIncumbent = incumbent;
+            lastImprovement = getDoubleInfo(GRB.CB_RUNTIME);
+        }
+        progressRecord record = newRecord("incumbent", Math.min(best, incumbent), bound, nodes);
+        lastReport = record.elapsed;
+        mapper.reportProgress(record);
+        checkPolicies(record);
+    }
+
+    progressRecord newRecord(String event, double incumbent, double bound, double nodes) throws GRBException {
+        progressRecord record = new progressRecord();
+        record.label = label;
+        record.event = event;
+        record.incumbent = incumbent;
+        record.bound = bound;
+        record.nodes = nodes;
+        record.elapsed = getDoubleInfo(GRB.CB_RUNTIME);
+        record.gap = Math.abs(incumbent) < 1e-10 ? Math.abs(incumbent - bound) :
+                Math.abs(incumbent - bound) / Math.abs(incumbent);
+        record.lastImprovement = lastImprovement;
+        return record;
+    }
+
+    /**
+     * Run stopping policies, abort the solve if one of them asks to.
+     *
+     * @return true if the solve is aborted
+     */
+    boolean checkPolicies(progressRecord record) {
+        if (stopped) {
+            return true;
+        }
+        for (stoppingPolicy policy : policies) {
+            String reason = policy.check(record);
+            if (reason != null) {
+                stopped = true;
+                mapper.reportStop(label, reason, record);
+                abort();
+                return true;
+            }
+        }
+        return false;
+    }
+}
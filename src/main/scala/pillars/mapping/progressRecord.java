@@ -0,0 +1,40 @@
+package pillars.mapping;
+
+import gurobi.GRB;
+
+import java.util.Locale;
+
+/**
+ * A snapshot of the solver progress.
+ */
+class progressRecord {
+    String label;
+    String event;
+    double incumbent;
+    double bound;
+    double gap;
+    double nodes;
+    double elapsed;
+    double lastImprovement;
+
+    boolean hasIncumbent() {
+        return incumbent < GRB.INFINITY;
+    }
+
+    /**
+     * Get the JSON line of this record.
+     */
+    String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"label\":\"%s\",\"event\":\"%s\",\"incumbent\":%s,\"bound\":%s,\"gap\":%s," +
+                        "\"nodes\":%.0f,\"elapsed\":%.3f}",
+                label, event, number(incumbent), number(bound), number(gap), nodes, elapsed);
+    }
+
+    static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= GRB.INFINITY) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+}
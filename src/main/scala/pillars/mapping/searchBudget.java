@@ -0,0 +1,68 @@
+package pillars.mapping;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The time budget and the restart budgets of searchMap.
+ * <p>
+ * The search stops when the wall-clock deadline is reached or the cancellation token is set.
+ * The k-th restart may use unit * luby(k) tries, so that short restarts are frequent
+ * and long restarts are still given to hard DFGs, without a fixed limit on tries.
+ */
+class searchBudget {
+    /**
+     * The deadline given by System.nanoTime, Long.MAX_VALUE for no limit.
+     */
+    final long deadline;
+    final AtomicBoolean token;
+    /**
+     * The tries of a restart with luby value 1.
+     */
+    int unit = 100;
+    int maxTrys = 10000000;
+
+    /**
+     * Constructed function.
+     *
+     * @param timeLimit the time limit in milliseconds from now, 0 for no limit
+     * @param token     the cancellation token shared with the caller, or null
+     */
+    searchBudget(long timeLimit, AtomicBoolean token) {
+        this.deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000L : Long.MAX_VALUE;
+        this.token = token;
+    }
+
+    /**
+     * Get the i-th (from 1) element of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+     */
+    static long luby(long i) {
+        while (true) {
+            int k = 1;
+            while ((1L << k) - 1 < i) k++;
+            if ((1L << k) - 1 == i) return 1L << (k - 1);
+            i -= (1L << (k - 1)) - 1;
+        }
+    }
+
+    /**
+     * Get the number of tries of the restart-th (from 1) restart.
+     */
+    int restartTrys(int restart) {
+        return (int) Math.min(maxTrys, unit * luby(restart));
+    }
+
+    boolean timeUp() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() >= deadline;
+    }
+
+    boolean cancelRequested() {
+        return token != null && token.get();
+    }
+
+    /**
+     * Check whether the search should stop.
+     */
+    boolean expired() {
+        return cancelRequested() || timeUp();
+    }
+}
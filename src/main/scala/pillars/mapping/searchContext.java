@@ -0,0 +1,124 @@
+package pillars.mapping;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+
+/**
+ * The precomputed data of searchMap which does not depend on the order of restarts.
+ * <p>
+ * A context is built once for a DFG and an MRRG, and is shared read-only by all restarts and workers.
+ * The distances only have the rows of function nodes, and can be reused by contexts of other DFGs on the same MRRG.
+ */
+class searchContext {
+    final int numMRRG;
+    /**
+     * The function nodes, and the row of each MRRG node in distances and matchTable, -1 for routing nodes.
+     */
+    final int[] funcNodes;
+    final int[] funcIndex;
+    /**
+     * The distances (the number of edges) from function nodes to all MRRG nodes.
+     */
+    final int[][] distances;
+    /**
+     * Whether an opNode can be placed on a function node, by the row of the function node.
+     */
+    final boolean[][] matchTable;
+    /**
+     * The fixed opNodes reachable from each opNode, given by (the length of the path, the fixed opNode).
+     */
+    final Map<Integer, Set<List<Integer>>> potentialAffectedNodes;
+    final int[] topoque;
+
+    /**
+     * Build the context of a mapper holding a DFG and an MRRG.
+     *
+     * @param mapper   the mapper
+     * @param sameMRRG a context built on the same MRRG whose distances are reused, or null
+     */
+    searchContext(searchMap mapper, searchContext sameMRRG) {
+        numMRRG = mapper.numMRRG;
+        long phase = mappingMetrics.start();
+        if (sameMRRG != null && sameMRRG.numMRRG == numMRRG
+                && sameMRRG.funcNodes.length == mapper.mrrgFuncNodes.size()) {
+            funcNodes = sameMRRG.funcNodes;
+            funcIndex = sameMRRG.funcIndex;
+            distances = sameMRRG.distances;
+        } else {
+            funcNodes = mapper.ListInt2Array(mapper.mrrgFuncNodes);
+            Arrays.sort(funcNodes);
+            funcIndex = new int[numMRRG];
+            Arrays.fill(funcIndex, -1);
+            distances = new int[funcNodes.length][];
+            for (int i = 0; i < funcNodes.length; i++) {
+                funcIndex[funcNodes[i]] = i;
+                distances[i] = mapper.GetShortestFrom(funcNodes[i]);
+            }
+            mapper.metrics.stop("shortest_path", phase);
+            phase = mappingMetrics.start();
+        }
+
+        int numOps = mapper.dfgOPNodes.size();
+        matchTable = new boolean[numOps][funcNodes.length];
+        for (int i = 0; i < numOps; i++)
+            for (int j = 0; j < funcNodes.length; j++) {
+                if (mapper.fixedMapRelation.containsKey(i)) {
+                    matchTable[i][j] = mapper.fixedMapRelation.get(i).contains(funcNodes[j]);
+                } else {
+                    matchTable[i][j] = mapper.matchOP(mapper.dfgOPNodes.get(i), funcNodes[j]);
+                }
+            }
+
+        /** Walks from an opNode only matter by (length, last opNode), so each pair is visited once.
+         * Without cycles other than self-loops, a walk has at most numDFG opNodes.
+         */
+        Map<Integer, Set<List<Integer>>> affected = new HashMap<>();
+        for (int i = 0; i < numOps; i++) {
+            Set<List<Integer>> items = new HashSet<>();
+            Set<Long> visited = new HashSet<>();
+            Queue<int[]> queue = new ArrayDeque<>();
+            for (int out : mapper.DFGout[i]) {
+                if (visited.add((long) mapper.numDFG + out)) {
+                    queue.offer(new int[]{out, 1});
+                }
+            }
+            while (!queue.isEmpty()) {
+                int[] item = queue.poll();
+                int node = item[0];
+                int length = item[1];
+                if (mapper.fixedMapRelation.containsKey(node)) {
+                    items.add(asList(length, node));
+                }
+                if (length >= mapper.numDFG) {
+                    continue;
+                }
+                for (int next : mapper.DFGout[node]) {
+                    if (next != node && visited.add((long) (length + 1) * mapper.numDFG + next)) {
+                        queue.offer(new int[]{next, length + 1});
+                    }
+                }
+            }
+            affected.put(i, Collections.unmodifiableSet(items));
+        }
+        potentialAffectedNodes = Collections.unmodifiableMap(affected);
+        topoque = mapper.toposort();
+        mapper.metrics.stop("precompute", phase);
+    }
+
+    /**
+     * Get the distance from a function node to an MRRG node, which is 0 from other nodes as the full table gave.
+     */
+    int distance(int from, int to) {
+        int row = funcIndex[from];
+        return row < 0 ? 0 : distances[row][to];
+    }
+
+    /**
+     * Check whether an opNode can be placed on a function node.
+     */
+    boolean matches(int op, int funcNode) {
+        int row = funcIndex[funcNode];
+        return row >= 0 && matchTable[op][row];
+    }
+}
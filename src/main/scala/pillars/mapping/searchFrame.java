@@ -0,0 +1,13 @@
+package pillars.mapping;
+
+import java.io.IOException;
+
+/**
+ * A frame of the explicit stack of searchMap, which is a call of a search routine with its own locals.
+ * <p>
+ * {@code step} runs the routine until it calls another routine, and gives the frame of the called routine,
+ * which is run before this frame is stepped again. It gives null when the routine returns.
+ */
+abstract class searchFrame {
+    abstract searchFrame step() throws IOException;
+}
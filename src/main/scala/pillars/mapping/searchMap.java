@@ -4,6 +4,11 @@ import java.io.*;
 import java.lang.reflect.Array;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Arrays.asList;
 
@@ -42,7 +47,6 @@ public class searchMap {
     String[] MRRGFunctionName;
     String[] MRRGRoutingName;
     Set<List<Integer>> MRRGPathUsed;
-    Map<Integer, Set<List<Integer>>> potentialAffectedNodes;
 
     List<Integer>[] MRRGout;
     List<Integer>[] MRRGin;
@@ -61,9 +65,13 @@ public class searchMap {
         return MRRGlatency.get(a);
     }
 
-    boolean[][] matchTable;
+    /**
+     * The precomputed data shared by all restarts, built by the first run when it is not given.
+     */
+    searchContext context;
     boolean[] used;
     int[] routingUsed;
+    searchTrail trail;
     int[] match;
     int[] reMatch;
 
@@ -120,8 +128,7 @@ public class searchMap {
         }
         System.arraycopy(path, 0, resultPath[a][b], 0, path.length);
         for (int x : path) {
-            used[x] = true;
-            routingUsed[x] = a;
+            trail.route(x, a);
         }
     }
 
@@ -131,24 +138,12 @@ public class searchMap {
         return ans;
     }
 
-    boolean[] backUpUsed() {
-        boolean[] me = new boolean[numMRRG];
-        System.arraycopy(used, 0, me, 0, numMRRG);
-        return me;
-    }
-
-    void restoreUsed(boolean[] me) {
-        System.arraycopy(me, 0, used, 0, numMRRG);
-    }
-
-    int[] backUpRoutingUsed() {
-        int[] me = new int[numMRRG];
-        System.arraycopy(routingUsed, 0, me, 0, numMRRG);
-        return me;
-    }
-
-    void restoreRoutingUsed(int[] me) {
-        System.arraycopy(me, 0, routingUsed, 0, numMRRG);
+    /**
+     * Restore used and routingUsed to a mark of the trail.
+     */
+    void backtrack(int mark) {
+        backtracks++;
+        trail.undo(mark);
     }
 
     int[] time;
@@ -166,7 +161,7 @@ public class searchMap {
         for (int x = 0; x < numDFG; x++) {
             int y = match[x];
             if (!matchOP(x, y)) {
-                System.out.printf("OP cant match %d %d table result : %d\n", x, y, matchTable[x][y] ? 1 : 0);
+                System.out.printf("OP cant match %d %d table result : %d\n", x, y, context.matches(x, y) ? 1 : 0);
                 return false;
             }
         }
@@ -372,12 +367,63 @@ public class searchMap {
     }
 
     void report() throws IOException {
+        if (solved != null && !solved.compareAndSet(false, true)) {
+            cancelled = true;
+            return;
+        }
         findSolution = true;
+        long phase = mappingMetrics.start();
         ValidateSolution();
+        metrics.stop("validate", phase);
+        phase = mappingMetrics.start();
         OutputSolution();
+        metrics.stop("output", phase);
+
+        solutionMatch = Arrays.copyOf(match, match.length);
+        solutionPath = new int[numDFG][numDFG][];
+        for (int x = 0; x < numDFG; x++)
+            for (int y = 0; y < numDFG; y++)
+                if (resultPath[x][y] != null) solutionPath[x][y] = Arrays.copyOf(resultPath[x][y], resultPath[x][y].length);
+        if (model != null) {
+            model.solutionMatch = solutionMatch;
+            model.solutionPath = solutionPath;
+            model.findSolution = true;
+            model.cancelWorkers();
+        }
     }
 
     boolean findSolution = false;
+
+    /** The placement and the routing paths of the found solution, which are kept after the search backtracks.
+     */
+    int[] solutionMatch;
+    int[][][] solutionPath;
+
+    /** A flag set by {@code cancel} from another thread, the search stops as soon as possible.
+     */
+    volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+        cancelWorkers();
+    }
+
+    /** The number of workers running shuffled restarts at the same time in {@code get}.
+     * Each worker is a searchMap sharing the read-only DFG and MRRG of this mapper with its own search state,
+     * and shuffles its own function nodes with seed + its index, so that its restarts are reproducible.
+     * The first worker finding a solution wins by solved, reports it, and cancels the others.
+     */
+    int threads = 1;
+    long seed = 0;
+    volatile List<searchMap> workers = Collections.emptyList();
+    AtomicBoolean solved;
+    searchMap model;
+
+    void cancelWorkers() {
+        for (searchMap worker : workers) {
+            worker.cancelled = true;
+        }
+    }
     int[] topoque;
 
     class dfsCaller implements Caller {
@@ -387,8 +433,8 @@ public class searchMap {
             this.num = num;
         }
 
-        public void go() throws IOException {
-            dfs(num);
+        public searchFrame go() {
+            return dfs(num);
         }
     }
 
@@ -405,76 +451,151 @@ public class searchMap {
             this.nxt = nxt;
         }
 
-        public void go() throws IOException {
-            SearchSinglePath(a, b, len, nxt);
+        public searchFrame go() {
+            return SearchSinglePath(a, b, len, nxt);
         }
     }
 
     int TRYS = 0;
 
-    void SearchSinglePath(int a, int b, int len, Caller nxt) throws IOException {
-        int[] ranks = GetRank(a, b, reMatch[a]);
-        int[][] toArray = GetToArray(b, len, ranks);
-        SearchPath(a, b, len, ranks, toArray, nxt);
+    /** The explicit stack of the running restart, where each frame is a call of dfs, linkEdgeDfs, dfsSelfCircle,
+     * dfsInputEdge, SearchPath, GreedySearch or a continuation.
+     */
+    searchStack stack;
+
+    /** The time limit and the cancellation token of the search, and the tries of the current restart given by it.
+     * The search stops with timedOut set when the deadline is reached.
+     */
+    searchBudget budget = new searchBudget(0, null);
+    int restarts = 0;
+    int restartTrys = 100;
+    volatile boolean timedOut = false;
+
+    /** The deepest placement reached, where the first bestPartialDepth opNodes in topoque are placed and routed
+     * by bestPartialMatch, and the other opNodes are not placed.
+     */
+    int bestPartialDepth = 0;
+    int[] bestPartialMatch;
+
+    /** Timing of the phases and counters of the search.
+     * Phases are "shortest_path", "precompute" and "search" of each restart,
+     * and "validate" and "output" nested in "search" when a solution is found.
+     * "restarts" counts the runs of get2 including the first one, and backtracks counts the undos of the trail.
+     * "best_partial_ops" is the number of opNodes placed by the best partial mapping,
+     * and "timed_out" is set when the time limit is reached. "steps" counts the steps of the frames of the stack.
+     */
+    mappingMetrics metrics = new mappingMetrics();
+    long backtracks = 0;
+
+    searchFrame SearchSinglePath(int a, int b, int len, Caller nxt) {
+        return new tailFrame() {
+            searchFrame call() {
+                int[] ranks = GetRank(a, b, reMatch[a]);
+                int[][] toArray = GetToArray(b, len, ranks);
+                return SearchPath(a, b, len, ranks, toArray, nxt);
+            }
+
+            public String toString() {
+                return "SearchSinglePath(" + a + ", " + b + ", " + len + ")";
+            }
+        };
     }
 
-    void dfsFireTime(int x, int num) throws IOException {
-        dfs(num + 1);
-        time[x] = 0;
-        /*
-        for(int i=-1;i<=1;i++){
-            time[x]=i;
-            dfs(num+1);
+    searchFrame dfsInputEdge(int x, int num) {
+        return new inputEdgeFrame(x, num);
+    }
+
+    /**
+     * Route the input edges of the opNode x placed at the num-th position of topoque with fire times,
+     * and continue with dfs(num + 1).
+     */
+    class inputEdgeFrame extends searchFrame {
+        int x, num;
+        //0: not started, 1: no input, 2: one input, 3: two inputs
+        int state = 0;
+        int y, l, r;
+        int limitL;
+        int[] ranks;
+        int[][] toArray;
+        int i;
+
+        inputEdgeFrame(int x, int num) {
+            this.x = x;
+            this.num = num;
         }
 
-         */
-    }
+        searchFrame step() {
+            if (state == 0) {
+                if (findSolution || cancelled) return null;
+                List<Integer> trueInput = new ArrayList<Integer>();
+                for (int y : DFGin[x])
+                    if (y != x) {
+                        trueInput.add(y);
+                    }
 
-    void dfsInputEdge(int x, int num) throws IOException {
-        if (findSolution) return;
-        List<Integer> trueInput = new ArrayList<Integer>();
-        for (int y : DFGin[x])
-            if (y != x) {
-                trueInput.add(y);
+                if (trueInput.size() == 0) {
+                    time[x] = 0;
+                    state = 1;
+                    return dfs(num + 1);
+                } else if (trueInput.size() == 1) {
+                    y = trueInput.get(0);
+                    ranks = GetRank(match[y], match[x], y);
+                    toArray = GetToArray(match[x], singlePathTimeLimit, ranks);
+                    state = 2;
+                } else if (trueInput.size() == 2) {
+                    l = trueInput.get(0);
+                    r = trueInput.get(1);
+                    //System.out.printf("two input , time is %d %d\n",time[l],time[r]);
+                    limitL = singlePathTimeLimit;
+                    if (time[l] < time[r]) limitL += time[r] - time[l];
+                    ranks = GetRank(match[l], match[x], l);
+                    toArray = GetToArray(match[x], limitL, ranks);
+                    state = 3;
+                } else {
+                    return null;
+                }
+                i = 0;
+            } else if (state == 1) {
+                time[x] = 0;
+                /*
+                for(int i=-1;i<=1;i++){
+                    time[x]=i;
+                    dfs(num+1);
+                }
+
+                 */
+                int matched = match[x];
+                String name = MRRGFunctionName[matched];
+                String[] sArray = name.split(":");
+                int rc = Integer.parseInt(sArray[0]);
+                time[x] = rc;
+                return null;
+            } else {
+                i++;
             }
 
-        if (trueInput.size() == 0) {
-            time[x] = 0;
-            dfsFireTime(x, num);
-            int matched = match[x];
-            String name = MRRGFunctionName[matched];
-            String[] sArray = name.split(":");
-            int rc = Integer.parseInt(sArray[0]);
-            time[x] = rc;
-        } else if (trueInput.size() == 1) {
-            int y = trueInput.get(0);
-            int[] ranks = GetRank(match[y], match[x], y);
-            int[][] toArray = GetToArray(match[x], singlePathTimeLimit, ranks);
-            for (int i = 0; i <= singlePathTimeLimit; i++) {
-                time[x] = time[y] + i;
-                SearchPath(match[y], match[x], i, ranks, toArray, new dfsCaller(num + 1));
+            if (state == 2) {
+                if (i <= singlePathTimeLimit) {
+                    time[x] = time[y] + i;
+                    return SearchPath(match[y], match[x], i, ranks, toArray, new dfsCaller(num + 1));
+                }
+                return null;
             }
-        } else if (trueInput.size() == 2) {
-            int l = trueInput.get(0);
-            int r = trueInput.get(1);
-            //System.out.printf("two input , time is %d %d\n",time[l],time[r]);
-            int limitL = singlePathTimeLimit;
-            int limitR = singlePathTimeLimit;
-            if (time[l] < time[r]) limitL += time[r] - time[l];
-            else limitR += time[l] - time[r];
-            int[] ranks = GetRank(match[l], match[x], l);
-            int[][] toArray = GetToArray(match[x], limitL, ranks);
-
-            for (int i = 0; i <= limitL; i++) {
+            for (; i <= limitL; i++) {
                 if (time[l] + i >= time[r]) {
                     time[x] = time[l] + i;
-                    for (int dr = 0; dr <= 0; dr++)
-                        if (time[x] - time[r] + dr >= 0) {
-                            SearchPath(match[l], match[x], i, ranks, toArray, new SinglePath(match[r],
-                                    match[x], time[x] - time[r] + dr, new dfsCaller(num + 1)));
-                        }
+                    //the skew of the right input is 0
+                    if (time[x] - time[r] >= 0) {
+                        return SearchPath(match[l], match[x], i, ranks, toArray, new SinglePath(match[r],
+                                match[x], time[x] - time[r], new dfsCaller(num + 1)));
+                    }
                 }
             }
+            return null;
+        }
+
+        public String toString() {
+            return "dfsInputEdge(" + x + ", " + num + ") at " + i;
         }
     }
 
@@ -594,44 +715,122 @@ public class searchMap {
         return path;
     }
 
-    void Go(int S, int a, int T, int restLen, int restEdge, List<Integer> path, int[] ranks, int[][] ToArray, Caller nextCall) throws IOException {
-        if (findSolution) return;
-        if (ToArray[restLen][a] == -1) return;
-        {
-            int[] restPath = GetPathTo(ToArray, a, T, restLen);
-            int[] allPath = PathMerge(ListInt2Array(path), restPath);
-            boolean[] bp = backUpUsed();
-            usePath(reMatch[S], reMatch[T], allPath);
-            nextCall.go();
-            restoreUsed(bp);
-        }
-        if (restEdge > 0) {
-            for (int x : MRRGout[a])
+    searchFrame Go(int S, int a, int T, int restLen, int restEdge, List<Integer> path, int[] ranks, int[][] ToArray, Caller nextCall) {
+        return new goFrame(S, a, T, restLen, restEdge, path, ranks, ToArray, nextCall);
+    }
+
+    class goFrame extends searchFrame {
+        int S, a, T, restLen, restEdge;
+        List<Integer> path;
+        int[] ranks;
+        int[][] ToArray;
+        Caller nextCall;
+        //0: not started, 1: the path is used, 2: extending the path
+        int state = 0;
+        int mark;
+        int k;
+
+        goFrame(int S, int a, int T, int restLen, int restEdge, List<Integer> path, int[] ranks, int[][] ToArray, Caller nextCall) {
+            this.S = S;
+            this.a = a;
+            this.T = T;
+            this.restLen = restLen;
+            this.restEdge = restEdge;
+            this.path = path;
+            this.ranks = ranks;
+            this.ToArray = ToArray;
+            this.nextCall = nextCall;
+        }
+
+        searchFrame step() {
+            if (state == 0) {
+                if (findSolution || cancelled) return null;
+                if (ToArray[restLen][a] == -1) return null;
+                int[] restPath = GetPathTo(ToArray, a, T, restLen);
+                int[] allPath = PathMerge(ListInt2Array(path), restPath);
+                mark = trail.mark();
+                usePath(reMatch[S], reMatch[T], allPath);
+                state = 1;
+                return nextCall.go();
+            } else if (state == 1) {
+                backtrack(mark);
+                if (restEdge <= 0) return null;
+                state = 2;
+                k = 0;
+            } else {
+                k++;
+            }
+            for (; k < MRRGout[a].size(); k++) {
+                int x = MRRGout[a].get(k);
                 if ((ranks[x] > ranks[a]) || (x == T)) {
                     if (ToArray[restLen][a] == x) continue;
                     if (restLen < getLatency(a, x)) continue;
                     List<Integer> p = new ArrayList<Integer>(path);
                     p.add(x);
-                    Go(S, x, T, restLen - getLatency(a, x), restEdge - 1, p, ranks, ToArray, nextCall);
+                    return Go(S, x, T, restLen - getLatency(a, x), restEdge - 1, p, ranks, ToArray, nextCall);
                 }
+            }
+            return null;
+        }
+
+        public String toString() {
+            return "Go(" + S + ", " + a + ", " + T + ", " + restLen + ")";
         }
     }
 
-    void NaiveSearch(int S, int x, int T, int len, int rest, List<Integer> path, Caller next) throws IOException {
-        if (x == T && len == 0) {
-            usePath(reMatch[S], reMatch[T], ListInt2Array(path));
-            next.go();
-            return;
+    searchFrame NaiveSearch(int S, int x, int T, int len, int rest, List<Integer> path, Caller next) {
+        return new naiveFrame(S, x, T, len, rest, path, next);
+    }
+
+    class naiveFrame extends searchFrame {
+        int S, x, T, len, rest;
+        List<Integer> path;
+        Caller next;
+        //0: not started, 1: extending the path, 2: finished
+        int state = 0;
+        int k, y;
+
+        naiveFrame(int S, int x, int T, int len, int rest, List<Integer> path, Caller next) {
+            this.S = S;
+            this.x = x;
+            this.T = T;
+            this.len = len;
+            this.rest = rest;
+            this.path = path;
+            this.next = next;
         }
-        if (rest > 0)
-            for (int y : MRRGout[x])
+
+        searchFrame step() {
+            if (state == 0) {
+                if (x == T && len == 0) {
+                    usePath(reMatch[S], reMatch[T], ListInt2Array(path));
+                    state = 2;
+                    return next.go();
+                }
+                if (rest <= 0) return null;
+                state = 1;
+                k = 0;
+            } else if (state == 1) {
+                used[y] = false;
+                k++;
+            } else {
+                return null;
+            }
+            for (; k < MRRGout[x].size(); k++) {
+                y = MRRGout[x].get(k);
                 if ((!used[y]) || y == T) if (len >= getLatency(x, y)) {
                     used[y] = true;
                     List<Integer> newpath = new ArrayList<Integer>(path);
                     newpath.add(y);
-                    NaiveSearch(S, y, T, len - getLatency(x, y), rest - 1, newpath, next);
-                    used[y] = false;
+                    return NaiveSearch(S, y, T, len - getLatency(x, y), rest - 1, newpath, next);
                 }
+            }
+            return null;
+        }
+
+        public String toString() {
+            return "NaiveSearch(" + S + ", " + x + ", " + T + ", " + len + ")";
+        }
     }
 
     boolean Contain(int[] x, int y) {
@@ -681,38 +880,107 @@ public class searchMap {
         return dp;
     }
 
-    void GreedySearch(int S, int x, int T, int len, int rest, List<Integer> path, Caller next) throws IOException {
-        int DFGin = reMatch[S];
-        int[][][] dp = trivialDPto(T, len, DFGin);
-        for (int delay = MaxDelay; delay >= 0; delay--) {
-            //for(int delay=0;delay<=MaxDelay;delay++){
-            if (delay % II == 0) {
-                if ((len - delay > 0) || (len - delay == 0 && S != T)) {
-                    if (dp[len - delay][x] != null) {
-                        boolean[] bkp = backUpUsed();
-                        int[] bkr = backUpRoutingUsed();
-                        usePath(reMatch[S], reMatch[T], PathMerge(ListInt2Array(path), dp[len - delay][x]));
-                        next.go();
-                        restoreUsed(bkp);
-                        restoreRoutingUsed(bkr);
-                        //return;
+    searchFrame GreedySearch(int S, int x, int T, int len, int rest, List<Integer> path, Caller next) {
+        return new greedyFrame(S, x, T, len, path, next);
+    }
+
+    /**
+     * Route the edge from S to T through the given path from S to x, with the paths from x to T
+     * given by trivialDPto for each delay, and continue with next.
+     */
+    class greedyFrame extends searchFrame {
+        int S, x, T, len;
+        List<Integer> path;
+        Caller next;
+        int[][][] dp;
+        int delay;
+        int mark;
+
+        greedyFrame(int S, int x, int T, int len, List<Integer> path, Caller next) {
+            this.S = S;
+            this.x = x;
+            this.T = T;
+            this.len = len;
+            this.path = path;
+            this.next = next;
+        }
+
+        searchFrame step() {
+            if (dp == null) {
+                int DFGin = reMatch[S];
+                dp = trivialDPto(T, len, DFGin);
+                delay = MaxDelay;
+            } else {
+                backtrack(mark);
+                //return;
+                delay--;
+            }
+            for (; delay >= 0; delay--) {
+                //for(int delay=0;delay<=MaxDelay;delay++){
+                if (delay % II == 0) {
+                    if ((len - delay > 0) || (len - delay == 0 && S != T)) {
+                        if (dp[len - delay][x] != null) {
+                            mark = trail.mark();
+                            usePath(reMatch[S], reMatch[T], PathMerge(ListInt2Array(path), dp[len - delay][x]));
+                            return next.go();
+                        }
                     }
                 }
             }
+            /*
+            if(dp[len][x]!=null){
+                int mark=trail.mark();
+                usePath(reMatch[S],reMatch[T],PathMerge(ListInt2Array(path),dp[len][x]));
+                next.go();
+                backtrack(mark);
+            }
+            */
+            return null;
         }
-        /*
-        if(dp[len][x]!=null){
-            boolean[] bkp=backUpUsed();
-            usePath(reMatch[S],reMatch[T],PathMerge(ListInt2Array(path),dp[len][x]));
-            next.go();
-            restoreUsed(bkp);
+
+        public String toString() {
+            return "GreedySearch(" + S + ", " + x + ", " + T + ", " + len + ") at delay " + delay;
         }
-        */
     }
 
-    void SearchPath(int a, int b, int len, int[] ranks, int[][] ToArray, Caller nextCall) throws IOException {
-        if (!isFirstOuter(reMatch[a], reMatch[b])) {
-            for (int i = 0; i < waitPath[reMatch[a]].length - 1; i++) {
+    searchFrame SearchPath(int a, int b, int len, int[] ranks, int[][] ToArray, Caller nextCall) {
+        return new searchPathFrame(a, b, len, nextCall);
+    }
+
+    /**
+     * Route the edge from a to b, from a when it is the first output edge of a,
+     * otherwise from each node on the path of the first output edge.
+     */
+    class searchPathFrame extends searchFrame {
+        int a, b, len;
+        Caller nextCall;
+        boolean started = false;
+        boolean firstOuter;
+        int i;
+
+        searchPathFrame(int a, int b, int len, Caller nextCall) {
+            this.a = a;
+            this.b = b;
+            this.len = len;
+            this.nextCall = nextCall;
+        }
+
+        searchFrame step() {
+            if (!started) {
+                started = true;
+                firstOuter = isFirstOuter(reMatch[a], reMatch[b]);
+                if (firstOuter) {
+                    List<Integer> path = new ArrayList<Integer>();
+                    path.add(a);
+                    return GreedySearch(a, path.get(path.size() - 1), b, len, singlePathEdgeLimit, path, nextCall);
+                    //NaiveSearch(a, path.get(path.size()-1), b, len, singlePathEdgeLimit, path, nextCall);
+                }
+                i = 0;
+            } else {
+                if (firstOuter) return null;
+                i++;
+            }
+            for (; i < waitPath[reMatch[a]].length - 1; i++) {
                 List<Integer> path = new ArrayList<Integer>();
                 int rlen = 0;
                 for (int j = 0; j <= i; j++) {
@@ -720,23 +988,44 @@ public class searchMap {
                     if (j < i) rlen += getLatency(waitPath[reMatch[a]][j], waitPath[reMatch[a]][j + 1]);
                 }
                 if (rlen <= len)
-                    GreedySearch(a, path.get(path.size() - 1), b, len - rlen, singlePathEdgeLimit, path, nextCall);
+                    return GreedySearch(a, path.get(path.size() - 1), b, len - rlen, singlePathEdgeLimit, path, nextCall);
                 //NaiveSearch(a, path.get(path.size()-1), b, len, singlePathEdgeLimit, path, nextCall);
             }
-        } else {
-            List<Integer> path = new ArrayList<Integer>();
-            path.add(a);
-            GreedySearch(a, path.get(path.size() - 1), b, len, singlePathEdgeLimit, path, nextCall);
-            //NaiveSearch(a, path.get(path.size()-1), b, len, singlePathEdgeLimit, path, nextCall);
-        }
 
-        //System.out.printf(" Try %d %d %d\n",a,b,len);
+            //System.out.printf(" Try %d %d %d\n",a,b,len);
+
+            //Go(a,a,b,len,singlePathEdgeLimit,new ArrayList<Integer>(),ranks,ToArray,nextCall);
+            return null;
+        }
 
-        //Go(a,a,b,len,singlePathEdgeLimit,new ArrayList<Integer>(),ranks,ToArray,nextCall);
+        public String toString() {
+            return "SearchPath(" + a + ", " + b + ", " + len + ") at " + i;
+        }
     }
 
+    /**
+     * A continuation of the search, which gives the frame of the routine to be called next.
+     */
     interface Caller {
-        void go() throws IOException;
+        searchFrame go();
+    }
+
+    /**
+     * The frame of a routine which ends by calling another routine.
+     */
+    abstract class tailFrame extends searchFrame {
+        boolean called = false;
+
+        searchFrame step() throws IOException {
+            if (called) return null;
+            called = true;
+            return call();
+        }
+
+        /**
+         * Run the routine, and get the frame of the routine it ends with, or null when it returns.
+         */
+        abstract searchFrame call();
     }
 
     class DfsInputEdge implements Caller {
@@ -747,33 +1036,53 @@ public class searchMap {
             this.num = num;
         }
 
-        public void go() throws IOException {
-            dfsInputEdge(x, num);
+        public searchFrame go() {
+            return dfsInputEdge(x, num);
         }
     }
 
-    void dfsSelfCircle(int x, int num) throws IOException {
-        if (findSolution) return;
-        if (DFGout[x].contains(x)) {
-            //not used
-            int[] ranks = GetRank(match[x], match[x], x);
-            //not used
-            int[][] ToArray = GetToArray(match[x], II, ranks);
-            SearchPath(match[x], match[x], II, ranks, ToArray, new DfsInputEdge(x, num));
+    searchFrame dfsSelfCircle(int x, int num) {
+        return new tailFrame() {
+            searchFrame call() {
+                if (findSolution || cancelled) return null;
+                if (DFGout[x].contains(x)) {
+                    //not used
+                    int[] ranks = GetRank(match[x], match[x], x);
+                    //not used
+                    int[][] ToArray = GetToArray(match[x], II, ranks);
+                    return SearchPath(match[x], match[x], II, ranks, ToArray, new DfsInputEdge(x, num));
+
+                    //dfsInputEdge(x,num);
+                } else {
+                    return dfsInputEdge(x, num);
+                }
+            }
 
-            //dfsInputEdge(x,num);
-        } else {
-            dfsInputEdge(x, num);
-        }
+            public String toString() {
+                return "dfsSelfCircle(" + x + ", " + num + ")";
+            }
+        };
     }
 
-    void linkEdgeDfs(int x, int num) throws IOException {
-        if (findSolution) return;
-        dfsSelfCircle(x, num);
+    searchFrame linkEdgeDfs(int x, int num) {
+        return new tailFrame() {
+            searchFrame call() {
+                if (findSolution || cancelled) return null;
+                return dfsSelfCircle(x, num);
+            }
+
+            public String toString() {
+                return "linkEdgeDfs(" + x + ", " + num + ")";
+            }
+        };
     }
 
+    /**
+     * The tries of the x-th opNode in topoque before returning to the (x-1)-th one,
+     * which is (num - x) * 5 for a restart of 100 tries, and grows with the tries of the restart.
+     */
     int CutTrys(int x, int num) {
-        int P = (num - x) * 5;
+        int P = (int) ((long) (num - x) * restartTrys / 20);
         if (P <= 5) P = 5;
         //if(P>2000)P=2000;
         return P;
@@ -782,57 +1091,28 @@ public class searchMap {
     int inf = 10000000;
     int LM_TRYS = 10000000;
 
-    void dfs(int x) throws IOException {
-        //if(LM_TRYS<TRYS)return;
-        if (findSolution) return;
-        //overfitting ?
-        TRYS++;
-        if (TRYS >= 100) return;
-        //System.out.printf("%d\n",x);
-//        System.out.println(TRYS);
-//        System.out.println(Arrays.toString(match));
-
-        logger.debug("Trys:" + TRYS);
-        logger.trace(Arrays.toString(match));
-
-        String[] debug;
-        debug = new String[match.length];
-        for (int j = 0; j < match.length; j++) {
-            if (match[j] == 0) {
-                debug[j] = " ";
-            } else {
-                debug[j] = MRRGFunctionName[match[j]];
-            }
-        }
-        logger.trace(Arrays.toString(debug));
-//        System.out.println(Arrays.toString(debug));
-
-        if (x == dfgOPNodes.size()) {
-            report();
-            return;
-        }
-        int NowTry = TRYS;
-        Integer[] id = new Integer[mrrgFuncNodes.size()];
-        for (int i = 0; i < id.length; i++) id[i] = i;
-
-
-        Arrays.sort(id, new Comparator<Integer>() {
+    /**
+     * The order of function nodes (by index in mrrgFuncNodes) tried for the x-th opNode in topoque,
+     * given by the distances from the placed inputs and the fixed opNodes it may affect.
+     */
+    Comparator<Integer> placementOrder(int x) {
+        return new Comparator<Integer>() {
             public int compare(Integer a, Integer b) {
 
                 int suma = 0;
                 for (int i = 0; i < x; i++) {
                     if (DFGin[topoque[x]].contains(topoque[i]))
-                        suma += shortestDis[match[topoque[i]]][mrrgFuncNodes.get(a)];
+                        suma += context.distance(match[topoque[i]], mrrgFuncNodes.get(a));
                 }
 
-                Set<List<Integer>> affectedA = potentialAffectedNodes.get(a);
+                Set<List<Integer>> affectedA = context.potentialAffectedNodes.get(a);
                 if (affectedA != null) {
                     for (List<Integer> item : affectedA) {
                         int dfgIndex = item.get(1);
                         double factor = 1.0 / (item.get(0) * fixedMapRelation.get(dfgIndex).size());
                         double value = 0.0;
                         for (Integer mrrgNode : fixedMapRelation.get(dfgIndex)) {
-                            value += shortestDis[mrrgNode][mrrgFuncNodes.get(a)];
+                            value += context.distance(mrrgNode, mrrgFuncNodes.get(a));
                         }
                         value = value * factor;
                         suma += (int) value;
@@ -843,16 +1123,16 @@ public class searchMap {
                 int sumb = 0;
                 for (int i = 0; i < x; i++)
                     if (DFGin[topoque[x]].contains(topoque[i]))
-                        sumb += shortestDis[match[topoque[i]]][mrrgFuncNodes.get(b)];
+                        sumb += context.distance(match[topoque[i]], mrrgFuncNodes.get(b));
 
-                Set<List<Integer>> affectedB = potentialAffectedNodes.get(b);
+                Set<List<Integer>> affectedB = context.potentialAffectedNodes.get(b);
                 if (affectedB != null) {
                     for (List<Integer> item : affectedB) {
                         int dfgIndex = item.get(1);
                         double factor = 1.0 / (item.get(0) * fixedMapRelation.get(dfgIndex).size());
                         double value = 0.0;
                         for (Integer mrrgNode : fixedMapRelation.get(dfgIndex)) {
-                            value += shortestDis[mrrgNode][mrrgFuncNodes.get(b)];
+                            value += context.distance(mrrgNode, mrrgFuncNodes.get(b));
                         }
                         value = value * factor;
                         sumb += (int) value;
@@ -864,42 +1144,113 @@ public class searchMap {
 
                 //return mrrgFuncNodes.get(a)-mrrgFuncNodes.get(b);
             }
-        });
+        };
+    }
 
-        int count = 0;
-        for (int _1 = 0; _1 < mrrgFuncNodes.size(); _1++)
-            if (matchTable[topoque[x]][id[_1]])
-                if (!used[mrrgFuncNodes.get(id[_1])]) {
-                    //LM_TRYS=NowTry+CutTrys(x,dfgOPNodes.size());
-                    int i = id[_1];
-                    if (findSolution) return;
-                    int suma = 0;
-
-                    for (int j = 0; j < x; j++)
-                        if (DFGin[topoque[x]].contains(topoque[j])) {
-                            suma += shortestDis[match[topoque[j]]][mrrgFuncNodes.get(i)];
-                        }
+    searchFrame dfs(int x) {
+        return new dfsFrame(x);
+    }
 
-                    if (suma >= inf) continue;
-//                    if (suma >= 26 + count) {
-//                        count += 1;
-//                        continue;
-//                    }
+    /**
+     * Place the x-th opNode in topoque on each free function node in placementOrder, and link its edges.
+     */
+    class dfsFrame extends searchFrame {
+        int x;
+        boolean started = false;
+        int NowTry;
+        Integer[] id;
+        int _1 = 0;
+        int mark;
+
+        dfsFrame(int x) {
+            this.x = x;
+        }
 
-                    match[topoque[x]] = mrrgFuncNodes.get(i);
-                    reMatch[mrrgFuncNodes.get(i)] = topoque[x];
-                    boolean[] bkp = backUpUsed();
-                    used[mrrgFuncNodes.get(i)] = true;
-                    linkEdgeDfs(topoque[x], x);
-                    restoreUsed(bkp);
-                    match[topoque[x]] = 0;
-                    if (TRYS - NowTry >= CutTrys(x, dfgOPNodes.size())) {
-                        return;
+        searchFrame step() throws IOException {
+            if (!started) {
+                started = true;
+                //if(LM_TRYS<TRYS)return;
+                if (findSolution || cancelled) return null;
+                //overfitting ?
+                if (budget.expired()) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("search frontier: " + frontier());
                     }
+                    cancelled = true;
+                    return null;
                 }
-    }
+                TRYS++;
+                if (TRYS >= restartTrys) return null;
+                //System.out.printf("%d\n",x);
+//                System.out.println(TRYS);
+//                System.out.println(Arrays.toString(match));
+
+                logger.debug("Trys:" + TRYS);
+                logger.trace(Arrays.toString(match));
+
+                String[] debug;
+                debug = new String[match.length];
+                for (int j = 0; j < match.length; j++) {
+                    if (match[j] == 0) {
+                        debug[j] = " ";
+                    } else {
+                        debug[j] = MRRGFunctionName[match[j]];
+                    }
+                }
+                logger.trace(Arrays.toString(debug));
+//                System.out.println(Arrays.toString(debug));
+
+                if (x > bestPartialDepth) {
+                    bestPartialDepth = x;
+                    bestPartialMatch = Arrays.copyOf(match, match.length);
+                }
+                if (x == dfgOPNodes.size()) {
+                    report();
+                    return null;
+                }
+                NowTry = TRYS;
+                id = new Integer[mrrgFuncNodes.size()];
+                for (int i = 0; i < id.length; i++) id[i] = i;
 
-    int[][] shortestDis;
+
+                Arrays.sort(id, placementOrder(x));
+            } else {
+                backtrack(mark);
+                match[topoque[x]] = 0;
+                if (TRYS - NowTry >= CutTrys(x, dfgOPNodes.size())) {
+                    return null;
+                }
+                _1++;
+            }
+
+            for (; _1 < mrrgFuncNodes.size(); _1++)
+                if (context.matches(topoque[x], mrrgFuncNodes.get(id[_1])))
+                    if (!used[mrrgFuncNodes.get(id[_1])]) {
+                        //LM_TRYS=NowTry+CutTrys(x,dfgOPNodes.size());
+                        int i = id[_1];
+                        if (findSolution || cancelled) return null;
+                        int suma = 0;
+
+                        for (int j = 0; j < x; j++)
+                            if (DFGin[topoque[x]].contains(topoque[j])) {
+                                suma += context.distance(match[topoque[j]], mrrgFuncNodes.get(i));
+                            }
+
+                        if (suma >= inf) continue;
+
+                        match[topoque[x]] = mrrgFuncNodes.get(i);
+                        reMatch[mrrgFuncNodes.get(i)] = topoque[x];
+                        mark = trail.mark();
+                        trail.use(mrrgFuncNodes.get(i));
+                        return linkEdgeDfs(topoque[x], x);
+                    }
+            return null;
+        }
+
+        public String toString() {
+            return "dfs(" + x + ") at " + _1;
+        }
+    }
 
     int[] GetShortestFrom(int S) {
         List<Integer> Q = new ArrayList<Integer>();
@@ -925,14 +1276,131 @@ public class searchMap {
     }
 
     public void get() throws IOException {
+        if (threads > 1) {
+            getParallel();
+            return;
+        }
+        if (context == null) {
+            context = new searchContext(this, null);
+        }
         //overfitting ?
-        while (!findSolution) {
+        while (!findSolution && !cancelled && !budget.expired()) {
             Collections.shuffle(mrrgFuncNodes);
             get2();
         }
+        finishBudget();
+    }
+
+    /**
+     * Set timedOut and record the best partial mapping when no solution is found.
+     */
+    void finishBudget() {
+        timedOut = !findSolution && budget.timeUp();
+        metrics.set("best_partial_ops", bestPartialDepth);
+        if (timedOut) {
+            metrics.set("timed_out", 1);
+            logger.info("searchMap runs out of time, the best partial mapping places "
+                    + bestPartialDepth + " of " + dfgOPNodes.size() + " opNodes");
+        }
+    }
+
+    /**
+     * Run shuffled restarts in workers until one of them finds a solution.
+     */
+    void getParallel() throws IOException {
+        solved = new AtomicBoolean(false);
+        List<searchMap> created = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            created.add(new searchMap(this, i));
+        }
+        workers = created;
+        if (cancelled) {
+            cancelWorkers();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (searchMap worker : created) {
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(worker.seed);
+                    while (!worker.findSolution && !worker.cancelled && !worker.budget.expired()) {
+                        Collections.shuffle(worker.mrrgFuncNodes, random);
+                        worker.get2();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    cancel();
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            for (searchMap worker : created) {
+                metrics.merge(worker.metrics);
+                if (worker.bestPartialDepth > bestPartialDepth) {
+                    bestPartialDepth = worker.bestPartialDepth;
+                    bestPartialMatch = worker.bestPartialMatch;
+                    topoque = worker.topoque;
+                }
+            }
+        }
+        finishBudget();
     }
 
     public void get2() throws IOException {
+        startSearch();
+
+        long phase = mappingMetrics.start();
+        resume(Long.MAX_VALUE);
+        metrics.stop("search", phase);
+        metrics.add("steps", stack.steps);
+        metrics.add("restarts", 1);
+        metrics.add("trys", TRYS);
+        metrics.set("backtracks", backtracks);
+    }
+
+    /**
+     * Build the search state and the stack of a restart, which is run by {@code resume}.
+     */
+    void startSearch() {
+        initSearch();
+        TRYS = 0;
+        restartTrys = budget.restartTrys(++restarts);
+        stack = new searchStack(dfs(0));
+    }
+
+    /**
+     * Run the stack of the restart for at most maxSteps steps. A paused restart keeps its stack and search state,
+     * and continues from where it stopped when it is resumed.
+     *
+     * @return true when the restart is finished
+     */
+    boolean resume(long maxSteps) throws IOException {
+        return stack.run(maxSteps);
+    }
+
+    /**
+     * Get the frames of the running restart from the bottom to the top.
+     */
+    List<String> frontier() {
+        return stack == null ? Collections.<String>emptyList() : stack.frontier();
+    }
+
+    /**
+     * Build the empty search state of a run of get2, and the context when it is not built.
+     */
+    void initSearch() {
+        if (context == null) {
+            context = new searchContext(this, null);
+        }
         //ReconstructDFG();
         time = new int[numDFG];
         logger.info("start to searchMap, II is " + II);
@@ -961,74 +1429,16 @@ public class searchMap {
             logger.debug("dfg in (" + i + ")= " + DFGin[i].toString());
 //            System.out.printf("dfg in (%d)= %s\n", i, DFGin[i].toString());
         }
-        shortestDis = new int[numMRRG][numMRRG];
-
-        /*
-        int[] tmp=ListInt2Array(mrrgFuncNodes);
-        for(int i=0;i<tmp.length;i++)if(tmp[i]==1601) {
-            int x=tmp[0];
-            tmp[0]=tmp[i];
-            tmp[i]=x;
-            break;
-        }
-        mrrgFuncNodes=Array2List(tmp);
-
-         */
-
-
-        for (int i = 0; i < mrrgFuncNodes.size(); i++) {
-            int[] dis = GetShortestFrom(mrrgFuncNodes.get(i));
-            for (int j = 0; j < numMRRG; j++) shortestDis[mrrgFuncNodes.get(i)][j] = dis[j];
-        }
-
-        for (int x : mrrgFuncNodes) {
-            int sum = 0;
-            int cnt = 0;
-            for (int y : mrrgFuncNodes)
-                if (shortestDis[x][y] < 1000) {
-                    sum += shortestDis[x][y];
-                    cnt++;
-                }
-            logger.debug(x + " :" + sum + " " + cnt);
-//            System.out.printf("%d :%d %d\n", x, sum, cnt);
-        }
-
-
-        matchTable = new boolean[dfgOPNodes.size()][mrrgFuncNodes.size()];
-        for (int i = 0; i < dfgOPNodes.size(); i++)
-            for (int j = 0; j < mrrgFuncNodes.size(); j++) {
-                if (fixedMapRelation.containsKey(i)) {
-                    if (fixedMapRelation.get(i).contains(mrrgFuncNodes.get(j))) {
-                        matchTable[i][j] = true;
-                    } else {
-                        matchTable[i][j] = false;
-                    }
-                } else {
-                    matchTable[i][j] = matchOP(dfgOPNodes.get(i), mrrgFuncNodes.get(j));
-                }
-            }
-
-        for (int i = 0; i < dfgOPNodes.size(); i++) {
-            potentialAffectedNodes.put(i, new HashSet<>());
-            Queue<List<Integer>> queue = new LinkedList<List<Integer>>();
-            for (Integer out : DFGout[i]) {
-                queue.offer(asList(out));
-            }
-            while (!queue.isEmpty()) {
-                List<Integer> node = queue.poll();
-                if (fixedMapRelation.containsKey(node.get(0))) {
-                    potentialAffectedNodes.get(i).add(asList(node.size(), node.get(0)));
-                }
-                if (DFGout[node.get(0)].size() > 0) {
-                    for (Integer next : DFGout[node.get(0)]) {
-                        if (next != node.get(0)) {
-                            List<Integer> nextList = new ArrayList<Integer>();
-                            nextList.add(next);
-                            nextList.addAll(node);
-                            queue.offer(nextList);
-                        }
+        if (logger.isDebugEnabled()) {
+            for (int x : mrrgFuncNodes) {
+                int sum = 0;
+                int cnt = 0;
+                for (int y : mrrgFuncNodes)
+                    if (context.distance(x, y) < 1000) {
+                        sum += context.distance(x, y);
+                        cnt++;
                     }
-                }
+                logger.debug(x + " :" + sum + " " + cnt);
             }
         }
 
@@ -1038,6 +1448,7 @@ public class searchMap {
             used[i] = false;
             routingUsed[i] = -1;
         }
+        trail = new searchTrail(used, routingUsed);
         match = new int[dfgOPNodes.size()];
         reMatch = new int[numMRRG];
 
@@ -1045,10 +1456,50 @@ public class searchMap {
 
 
         //MM cant work
-        topoque = toposort();
-        TRYS = 0;
+        topoque = context.topoque;
+    }
 
-        dfs(0);
+    /**
+     * Create a worker of a mapper, which shares the DFG and the MRRG of the mapper.
+     *
+     * @param _model the mapper
+     * @param index  the index of the worker
+     */
+    searchMap(searchMap _model, int index) {
+        model = _model;
+        solved = model.solved;
+        seed = model.seed + index;
+        singlePathTimeLimit = model.singlePathTimeLimit;
+        singlePathEdgeLimit = model.singlePathEdgeLimit;
+        MaxDelay = model.MaxDelay;
+        numDFG = model.numDFG;
+        filename = model.filename;
+        waitSkewMap = model.waitSkewMap;
+        DFGRelativeSkewMap = model.DFGRelativeSkewMap;
+        DFGLatencyMap = model.DFGLatencyMap;
+        DFGCommutatedSet = model.DFGCommutatedSet;
+        DFGOpNodeName = model.DFGOpNodeName;
+        DFGCommutativeSet = model.DFGCommutativeSet;
+        DFGOpOperand = model.DFGOpOperand;
+        fixedMapRelation = model.fixedMapRelation;
+        dfgOPNodes = model.dfgOPNodes;
+        dfgValNodes = model.dfgValNodes;
+        DFGout = model.DFGout;
+        DFGin = model.DFGin;
+        DFGop = model.DFGop;
+        II = model.II;
+        numMRRG = model.numMRRG;
+        mrrgFuncNodes = new ArrayList<>(model.mrrgFuncNodes);
+        mrrgRoutingNodes = model.mrrgRoutingNodes;
+        MRRGFunctionName = model.MRRGFunctionName;
+        MRRGRoutingName = model.MRRGRoutingName;
+        MRRGPathUsed = model.MRRGPathUsed;
+        context = model.context;
+        budget = model.budget;
+        MRRGout = model.MRRGout;
+        MRRGin = model.MRRGin;
+        MRRGop = model.MRRGop;
+        MRRGlatency = model.MRRGlatency;
     }
 
     public searchMap(int DFGnodes, int MRRGnodes) {
@@ -1073,7 +1524,6 @@ public class searchMap {
         DFGCommutativeSet = new HashSet();
         DFGOpOperand = new HashMap<>();
         fixedMapRelation = new HashMap<>();
-        potentialAffectedNodes = new HashMap<>();
 
 
         numMRRG = MRRGnodes;
@@ -0,0 +1,64 @@
+package pillars.mapping;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The explicit stack running the frames of a search, instead of the call stack of the JVM.
+ * <p>
+ * The depth of a search is only limited by the heap. A search can be run for a number of steps,
+ * inspected by {@code frontier}, and resumed later, as the frames and the search state of searchMap are kept.
+ */
+class searchStack {
+    ArrayDeque<searchFrame> frames = new ArrayDeque<>();
+    long steps = 0;
+    int maxDepth = 0;
+
+    /**
+     * Constructed function.
+     *
+     * @param root the frame of the search
+     */
+    searchStack(searchFrame root) {
+        frames.push(root);
+        maxDepth = 1;
+    }
+
+    /**
+     * Step the frame on the top at most maxSteps times.
+     *
+     * @return true when the search is finished
+     */
+    boolean run(long maxSteps) throws IOException {
+        for (long i = 0; i < maxSteps && !frames.isEmpty(); i++) {
+            searchFrame called = frames.peek().step();
+            steps++;
+            if (called == null) {
+                frames.pop();
+            } else {
+                frames.push(called);
+                maxDepth = Math.max(maxDepth, frames.size());
+            }
+        }
+        return frames.isEmpty();
+    }
+
+    boolean finished() {
+        return frames.isEmpty();
+    }
+
+    /**
+     * Get the frames from the bottom to the top.
+     */
+    List<String> frontier() {
+        List<String> result = new ArrayList<>();
+        Iterator<searchFrame> iterator = frames.descendingIterator();
+        while (iterator.hasNext()) {
+            result.add(iterator.next().toString());
+        }
+        return result;
+    }
+}
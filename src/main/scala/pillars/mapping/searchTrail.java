@@ -0,0 +1,81 @@
+package pillars.mapping;
+
+import java.util.Arrays;
+
+/**
+ * An undo log (trail) of the used and routingUsed arrays of searchMap.
+ * <p>
+ * Each change records the node and its old values before it is written.
+ * Take a {@code mark} before a step, and {@code undo} to it on backtrack, which restores the changes
+ * after the mark in reverse order. Backtracking costs the number of changed nodes instead of the size of the MRRG.
+ */
+class searchTrail {
+    boolean[] used;
+    int[] routingUsed;
+    int[] nodes = new int[64];
+    boolean[] oldUsed = new boolean[64];
+    int[] oldRoutingUsed = new int[64];
+    int size = 0;
+
+    /**
+     * Constructed function.
+     *
+     * @param _used        the used array of searchMap, which is changed in place
+     * @param _routingUsed the routingUsed array of searchMap, which is changed in place
+     */
+    searchTrail(boolean[] _used, int[] _routingUsed) {
+        used = _used;
+        routingUsed = _routingUsed;
+    }
+
+    /**
+     * Get the mark of the current state.
+     */
+    int mark() {
+        return size;
+    }
+
+    void record(int node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            oldUsed = Arrays.copyOf(oldUsed, size * 2);
+            oldRoutingUsed = Arrays.copyOf(oldRoutingUsed, size * 2);
+        }
+        nodes[size] = node;
+        oldUsed[size] = used[node];
+        oldRoutingUsed[size] = routingUsed[node];
+        size++;
+    }
+
+    /**
+     * Mark a node as used.
+     */
+    void use(int node) {
+        if (!used[node]) {
+            record(node);
+            used[node] = true;
+        }
+    }
+
+    /**
+     * Mark a node as used for routing the value of a DFG node.
+     */
+    void route(int node, int dfgNode) {
+        if (!used[node] || routingUsed[node] != dfgNode) {
+            record(node);
+            used[node] = true;
+            routingUsed[node] = dfgNode;
+        }
+    }
+
+    /**
+     * Restore the changes after a mark.
+     */
+    void undo(int mark) {
+        while (size > mark) {
+            size--;
+            used[nodes[size]] = oldUsed[size];
+            routingUsed[nodes[size]] = oldRoutingUsed[size];
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package pillars.mapping;
+
+/**
+ * A policy deciding whether the solve should stop early from the progress records.
+ * A policy keeps its own state, so each solved model uses a new policy.
+ */
+interface stoppingPolicy {
+    /**
+     * Check the latest record.
+     *
+     * @return the reason of stopping, or null to continue
+     */
+    String check(progressRecord record);
+}
@@ -0,0 +1,104 @@
+package pillars.mapping
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import pillars.core.MRRGMode.{MEM_MODE, NORMAL_MODE, REG_MODE}
+import pillars.core.OpEnum.OpEnum
+import pillars.core.{MRRG, NodeMRRG, OpEnum}
+
+/** Tests of ResMII and RecMII on small DFGs and MRRGs.
+ */
+class MIISpec extends AnyFlatSpec with Matchers {
+
+  /** Add an opNode whose operands are given by inputs in order.
+   */
+  def addOp(dfg: DFG, name: String, opcode: OpEnum, inputs: OpNode*): OpNode = {
+    val op = new OpNode(name)
+    op.opcode = opcode
+    op.input = inputs.indices.map(i => i -> inputs(i)).toMap
+    dfg.addOpNode(op)
+    op
+  }
+
+  /** Add a function node, whose cycle is given by the prefix of its name.
+   */
+  def addFunction(mrrg: MRRG, name: String, mode: Int, opcodes: OpEnum*): NodeMRRG = {
+    val node = new NodeMRRG(name)
+    node.ops ++= opcodes
+    node.mode = mode
+    mrrg.addNode(node)
+    node
+  }
+
+  "recMII" should "be 1 for a self-loop accumulator" in {
+    val dfg = new DFG("acc")
+    val in = addOp(dfg, "in", OpEnum.INPUT)
+    val acc = addOp(dfg, "acc", OpEnum.ADD)
+    acc.input = Map(0 -> acc, 1 -> in)
+    val mrrg = new MRRG()
+    addFunction(mrrg, "0:in", NORMAL_MODE, OpEnum.INPUT)
+    addFunction(mrrg, "0:alu", NORMAL_MODE, OpEnum.ADD)
+
+    MII.recMII(dfg, mrrg) shouldBe 1
+    MII.check(dfg, mrrg) shouldBe true
+  }
+
+  it should "count the latency of REG and MEM nodes in a two-node recurrence" in {
+    val dfg = new DFG("recurrence")
+    val add = addOp(dfg, "add", OpEnum.ADD)
+    val load = addOp(dfg, "load", OpEnum.LOAD, add)
+    add.input = Map(0 -> load)
+    val mrrg = new MRRG()
+    addFunction(mrrg, "0:alu", REG_MODE, OpEnum.ADD)
+    addFunction(mrrg, "0:mem", MEM_MODE, OpEnum.LOAD)
+
+    MII.recMII(dfg, mrrg) shouldBe 2
+    MII.check(dfg, mrrg) shouldBe false
+    dfg.II = 2
+    MII.check(dfg, mrrg) shouldBe true
+
+    //An ADD without a register does not add latency.
+    addFunction(mrrg, "0:alu2", NORMAL_MODE, OpEnum.ADD)
+    MII.recMII(dfg, mrrg) shouldBe 1
+  }
+
+  "resMIIs" should "only count INPUT nodes in cycle 0" in {
+    val dfg = new DFG("inputs")
+    dfg.II = 2
+    val inputs = (0 until 3).map(i => addOp(dfg, "in" + i, OpEnum.INPUT))
+    addOp(dfg, "add", OpEnum.ADD, inputs(0), inputs(1))
+    val mrrg = new MRRG()
+    for (cycle <- 0 until 2) {
+      addFunction(mrrg, cycle + ":in0", NORMAL_MODE, OpEnum.INPUT)
+      addFunction(mrrg, cycle + ":in1", NORMAL_MODE, OpEnum.INPUT)
+      addFunction(mrrg, cycle + ":alu", NORMAL_MODE, OpEnum.ADD)
+    }
+
+    val res = MII.resMIIs(dfg, mrrg)
+    res("input") shouldBe Int.MaxValue
+    res("add") shouldBe 1
+    res("all") shouldBe 1
+    MII.check(dfg, mrrg) shouldBe false
+
+    //Other opcodes share the function nodes of one cycle over II cycles.
+    addOp(dfg, "add2", OpEnum.ADD, inputs(2))
+    addOp(dfg, "add3", OpEnum.ADD, inputs(2))
+    MII.resMIIs(dfg, mrrg)("add") shouldBe 3
+  }
+
+  it should "bound a fixed-SRAM group by the nodes of its SRAM" in {
+    val dfg = new DFG("sram")
+    val load0 = addOp(dfg, "load0", OpEnum.LOAD)
+    val load1 = addOp(dfg, "load1", OpEnum.LOAD)
+    val load2 = addOp(dfg, "load2", OpEnum.LOAD)
+    dfg.fixedMapSRAM = Map(load0 -> 0, load1 -> 0, load2 -> 2)
+    val mrrg = new MRRG()
+    addFunction(mrrg, "0:mem0", MEM_MODE, OpEnum.LOAD).sramID = 0
+    addFunction(mrrg, "0:mem1", MEM_MODE, OpEnum.LOAD).sramID = 1
+
+    val res = MII.resMIIs(dfg, mrrg)
+    res("sram 0") shouldBe 2
+    res("sram 2") shouldBe Int.MaxValue
+    res.contains("load") shouldBe false
+  }
+}
@@ -0,0 +1,64 @@
+package pillars.mapping
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import pillars.core.OpEnum.OpEnum
+import pillars.core.{MRRG, NodeMRRG, OpEnum}
+
+/** Tests of the matching between opNodes and function nodes.
+ */
+class PlacementCheckSpec extends AnyFlatSpec with Matchers {
+
+  def addOp(dfg: DFG, name: String, opcode: OpEnum): OpNode = {
+    val op = new OpNode(name)
+    op.opcode = opcode
+    dfg.addOpNode(op)
+    op
+  }
+
+  def addFunction(mrrg: MRRG, name: String, opcodes: OpEnum*): NodeMRRG = {
+    val node = new NodeMRRG(name)
+    node.ops ++= opcodes
+    mrrg.addNode(node)
+    node
+  }
+
+  "PlacementCheck" should "match all opNodes when the function nodes fit exactly" in {
+    val dfg = new DFG("fit")
+    addOp(dfg, "in", OpEnum.INPUT)
+    addOp(dfg, "mul", OpEnum.MUL)
+    addOp(dfg, "add", OpEnum.ADD)
+    val mrrg = new MRRG()
+    addFunction(mrrg, "in", OpEnum.INPUT)
+    addFunction(mrrg, "alu0", OpEnum.ADD)
+    addFunction(mrrg, "alu1", OpEnum.ADD, OpEnum.MUL)
+    addFunction(mrrg, "wire")
+
+    val result = PlacementCheck.check(dfg, mrrg)
+    result.feasible shouldBe true
+    result.matched shouldBe 3
+    result.numOps shouldBe 3
+    result.toString shouldBe "placement is feasible"
+  }
+
+  it should "report an oversubscribed opcode with its capacity" in {
+    val dfg = new DFG("oversubscribed")
+    for (i <- 0 until 3) {
+      addOp(dfg, "mul" + i, OpEnum.MUL)
+    }
+    addOp(dfg, "add", OpEnum.ADD)
+    val mrrg = new MRRG()
+    addFunction(mrrg, "alu0", OpEnum.ADD, OpEnum.MUL)
+    addFunction(mrrg, "alu1", OpEnum.ADD, OpEnum.MUL)
+    addFunction(mrrg, "alu2", OpEnum.ADD)
+    addFunction(mrrg, "alu3", OpEnum.ADD)
+
+    val result = PlacementCheck.check(dfg, mrrg)
+    result.feasible shouldBe false
+    result.matched shouldBe 3
+    result.numOps shouldBe 4
+    result.oversubscribed shouldBe Map("mul" -> 3)
+    result.capacity shouldBe 2
+    result.toString shouldBe "placement is infeasible: 3 mul share 2 function nodes"
+  }
+}
@@ -0,0 +1,20 @@
+package pillars.mapping
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+/** Tests of the restart budgets of searchMap.
+ */
+class searchBudgetSpec extends AnyFlatSpec with Matchers {
+
+  "luby" should "give the Luby sequence" in {
+    (1L to 15L).map(i => searchBudget.luby(i)) shouldBe Seq(1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8).map(_.toLong)
+  }
+
+  "restartTrys" should "scale the Luby sequence by the unit" in {
+    val budget = new searchBudget(0, null)
+    budget.restartTrys(1) shouldBe 100
+    budget.restartTrys(7) shouldBe 400
+    budget.expired() shouldBe false
+  }
+}
@@ -0,0 +1,60 @@
+package pillars.mapping
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+/** Tests of the undo log of searchMap.
+ */
+class searchTrailSpec extends AnyFlatSpec with Matchers {
+
+  "searchTrail" should "restore a used node routed for another DFG node" in {
+    val used = Array(false, true, false)
+    val routingUsed = Array(-1, 5, -1)
+    val trail = new searchTrail(used, routingUsed)
+    val mark = trail.mark()
+    trail.route(1, 7)
+    trail.route(1, 7)
+    trail.size shouldBe 1
+    routingUsed(1) shouldBe 7
+
+    trail.undo(mark)
+    used shouldBe Array(false, true, false)
+    routingUsed shouldBe Array(-1, 5, -1)
+  }
+
+  it should "undo nested marks in reverse order" in {
+    val used = Array.fill(4)(false)
+    val routingUsed = Array.fill(4)(-1)
+    val trail = new searchTrail(used, routingUsed)
+    val outer = trail.mark()
+    trail.use(0)
+    trail.route(1, 2)
+    val inner = trail.mark()
+    trail.route(1, 3)
+    trail.use(2)
+
+    trail.undo(inner)
+    used shouldBe Array(true, true, false, false)
+    routingUsed shouldBe Array(-1, 2, -1, -1)
+    trail.undo(outer)
+    used shouldBe Array.fill(4)(false)
+    routingUsed shouldBe Array.fill(4)(-1)
+  }
+
+  it should "grow past 64 entries" in {
+    val used = Array.fill(100)(false)
+    val routingUsed = Array.fill(100)(-1)
+    val trail = new searchTrail(used, routingUsed)
+    trail.use(0)
+    val mark = trail.mark()
+    for (node <- 1 until 100) {
+      trail.route(node, node % 7)
+    }
+    trail.size shouldBe 100
+    trail.nodes.length should be >= 100
+
+    trail.undo(mark)
+    used shouldBe (true +: Array.fill(99)(false))
+    routingUsed shouldBe Array.fill(100)(-1)
+  }
+}